@@ -12,6 +12,8 @@ import java.io.File;
 import b100.minimap.config.Config;
 import b100.minimap.config.Keybind;
 import b100.minimap.config.MapConfig;
+import b100.minimap.data.RegionFileCache;
+import b100.minimap.data.TileWriteQueue;
 import b100.minimap.data.WorldData;
 import b100.minimap.data.WorldDataManager;
 import b100.minimap.gui.GuiConfigGeneral;
@@ -46,6 +48,7 @@ public class Minimap {
 	public IGuiUtils guiUtils;
 	public WorldDataManager worldDataManager;
 	public WorldData worldData;
+	public TileWriteQueue tileWriteQueue = new TileWriteQueue();
 
 	private Minimap() {
 		if(mc == null)
@@ -63,6 +66,7 @@ public class Minimap {
 		blockRenderManager = new BlockRenderManager(tileColors);
 		guiUtils = new GuiUtilsImpl(mc);
 		updateStyle();
+		Runtime.getRuntime().addShutdownHook(new Thread(tileWriteQueue::shutdown, "Minimap-Shutdown"));
 	}
 
 	public void loadConfig() {
@@ -129,6 +133,8 @@ public class Minimap {
 			return;
 		}
 
+		minecraftHelper.flushWorldListeners();
+
 		if(!guiUtils.isGuiOpened()) {
 			updateInput();
 		}
@@ -250,6 +256,8 @@ public class Minimap {
 		if(this.worldData != null) {
 			this.worldData.save();
 			this.worldData = null;
+			tileWriteQueue.flush();
+			RegionFileCache.closeAll();
 		}
 
 		this.theWorld = newWorld;
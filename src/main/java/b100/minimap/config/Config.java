@@ -10,11 +10,21 @@ public class Config extends ConfigBase {
 	public MapConfig mapConfig = new MapConfig();
 
 	public BooleanOption mapVisible = new BooleanOption("mapVisible", true);
-	public IntegerOption updateSpeed = new IntegerOption("updateSpeed", 1).setMinMax(1, 16);
+	/**
+	 * Most time in milliseconds the client thread spends on tile updates per frame. Replaces updateSpeed,
+	 * which counted tiles, under a new name so old values are not read as milliseconds.
+	 */
+	public IntegerOption updateBudget = new IntegerOption("updateBudget", 3).setMinMax(1, 16);
+	public IntegerOption targetFps = new IntegerOption("targetFps", 60).setMinMax(20, 240);
+	public IntegerOption renderThreads = new IntegerOption("renderThreads", 2).setMinMax(0, 8);
+	public IntegerOption prefetchChunks = new IntegerOption("prefetchChunks", 2).setMinMax(0, 16);
+	public IntegerOption lodRadius = new IntegerOption("lodRadius", 16).setMinMax(0, 64);
+	public IntegerOption tileMemory = new IntegerOption("tileMemory", 16).setMinMax(1, 256);
 	public IntegerOption requireItem = new IntegerOption("requireItem", 0).setMinMax(0, 1);
 
 	public BooleanOption mask = new BooleanOption("mask", true);
 	public BooleanOption showTiles = new BooleanOption("showTiles", false);
+	public BooleanOption showStats = new BooleanOption("showStats", false);
 
 	public Keybind keyMap = new Keybind("keyMap", Keyboard.KEY_M).setCanBeUnbound(false);
 	public Keybind keyHideMap = new Keybind("keyHideMap", Keyboard.KEY_NONE);
@@ -32,11 +42,17 @@ public class Config extends ConfigBase {
 		List<Option<?>> options = new ArrayList<>();
 
 		options.add(mapVisible);
-		options.add(updateSpeed);
+		options.add(updateBudget);
+		options.add(targetFps);
+		options.add(renderThreads);
+		options.add(prefetchChunks);
+		options.add(lodRadius);
+		options.add(tileMemory);
 		options.add(requireItem);
 
 		options.add(mask);
 		options.add(showTiles);
+		options.add(showStats);
 		
 		for(int i=0; i < keyBinds.length; i++) {
 			options.add(keyBinds[i]);
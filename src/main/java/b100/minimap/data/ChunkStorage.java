@@ -3,105 +3,264 @@ package b100.minimap.data;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.file.Files;
+import java.util.Arrays;
 
 import javax.imageio.ImageIO;
 
 import b100.minimap.Minimap;
+import b100.minimap.render.MapRender;
+import b100.minimap.utils.LongLongMap;
+import b100.minimap.utils.TileHash;
 
 /**
- * File-backed storage for minimap tiles. Uses content-addressed storage by hash.
- * Also maintains per-chunk mapping to tile hash.
+ * File-backed storage for minimap tiles. Tiles are stored in region files of 32 * 32 chunks,
+ * see {@link RegionFile}, encoded by {@link TileCodec} with the 64 bit hash of the tile as the tag
+ * of the region file entry.
+ * <p>
+ * When the storage is opened, the hashes of all stored chunks are read from the region file headers
+ * into memory, so existence and hash queries never touch the disk and unchanged tiles are not written
+ * again. The index on disk is updated with every written tile. One storage is kept per world and
+ * dimension, see {@link WorldData#getChunkStorage()}, it can be used from several threads.
+ * <p>
+ * Tiles saved by older versions as one hash file per chunk and one content-addressed tile file
+ * per hash are still read when a chunk is not in a region file.
  */
 public class ChunkStorage {
 
-	private final File chunksDir; // mapping chunk->hash
-	private final File tilesDir;  // content-addressed tiles by hash
+	public static final int TILE_SIZE = 16;
+
+	/**
+	 * Tiles are encoded in region files, see {@link TileCodec}
+	 */
+	private static final ThreadLocal<TileCodec> codecs = ThreadLocal.withInitial(TileCodec::new);
+
+	public final String dimensionId;
+
+	private final File chunksDir; // region files and old chunk->hash files
+	private final File tilesDir;  // old content-addressed tiles by hash
+
+	/**
+	 * Tile hash of every chunk stored in a region file
+	 */
+	private final LongLongMap index = new LongLongMap(1024);
+
+	/**
+	 * Chunks stored in the old format, the value is unused
+	 */
+	private final LongLongMap legacyChunks = new LongLongMap(16);
 
 	public ChunkStorage(File worldDataDir, String dimensionId) {
 		File baseDir = new File(worldDataDir, "chunks");
+		this.dimensionId = dimensionId;
 		this.chunksDir = new File(baseDir, dimensionId);
 		this.tilesDir = new File(this.chunksDir, "tiles");
 		this.chunksDir.mkdirs();
-		this.tilesDir.mkdirs();
+
+		loadIndex();
+	}
+
+	/**
+	 * @return the directory of the dimension, containing the region files
+	 */
+	public File getDirectory() {
+		return chunksDir;
+	}
+
+	private void loadIndex() {
+		long start = System.nanoTime();
+		File[] files = chunksDir.listFiles();
+		if (files == null) return;
+
+		for (File file : files) {
+			String name = file.getName();
+			int[] region = RegionFileCache.parseFileName(name);
+			if (region != null) {
+				RegionFile regionFile = RegionFileCache.acquireRegionFile(file, false);
+				if (regionFile == null) continue;
+				try {
+					for (int i=0; i < RegionFile.CHUNKS; i++) {
+						if (!regionFile.contains(i)) continue;
+						int chunkX = region[0] << RegionFile.SHIFT | (i & (RegionFile.SIZE - 1));
+						int chunkZ = region[1] << RegionFile.SHIFT | (i >> RegionFile.SHIFT);
+						index.put(MapRender.getChunkKey(chunkX, chunkZ), regionFile.getTag(i));
+					}
+				} finally {
+					RegionFileCache.releaseRegionFile(regionFile);
+				}
+			} else if (name.endsWith(".hash")) {
+				int us = name.indexOf('_');
+				int dot = name.indexOf('.');
+				if (us <= 0 || dot <= us) continue;
+				try {
+					legacyChunks.put(MapRender.getChunkKey(Integer.parseInt(name.substring(0, us)), Integer.parseInt(name.substring(us + 1, dot))), 0L);
+				} catch (NumberFormatException e) {}
+			}
+		}
+		Minimap.log("Loaded tile index of dimension " + dimensionId + ": " + index.size() + " chunks, " + legacyChunks.size() + " old chunks in " + (System.nanoTime() - start) / 1000000 + " ms");
 	}
 
 	// -------- Hash utilities --------
 
-	private static String toHex(byte[] bytes) {
-		StringBuilder sb = new StringBuilder(bytes.length * 2);
-		for (byte b : bytes) sb.append(String.format("%02x", b));
-		return sb.toString();
+	/**
+	 * @see TileHash
+	 */
+	public long computeHashARGB(int[] argb) {
+		return TileHash.hash(argb);
 	}
 
-	public String computeHashARGB(int[] argb) {
+	// -------- Chunk tiles --------
+
+	/**
+	 * Store the tile of a chunk, nothing is written if the same tile is already stored
+	 */
+	public void saveChunkTile(int chunkX, int chunkZ, int[] argb) {
+		long key = MapRender.getChunkKey(chunkX, chunkZ);
+		long hash = computeHashARGB(argb);
+		synchronized (index) {
+			if (index.containsKey(key) && index.get(key, 0L) == hash) return;
+		}
+
+		RegionFile regionFile = RegionFileCache.acquireRegionFile(chunksDir, chunkX, chunkZ, true);
+		if (regionFile == null) return;
 		try {
-			MessageDigest md = MessageDigest.getInstance("SHA-1");
-			ByteBuffer bb = ByteBuffer.allocate(argb.length * 4);
-			for (int v : argb) bb.putInt(v);
-			md.update(bb.array());
-			return toHex(md.digest());
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException(e);
+			TileCodec codec = codecs.get();
+			int length = codec.encode(argb);
+			regionFile.write(RegionFile.getIndex(chunkX, chunkZ), codec.buffer, length, hash);
+		} catch (IOException e) {
+			Minimap.log("Failed to save chunk tile ("+chunkX+","+chunkZ+"): "+e.getMessage());
+			return;
+		} finally {
+			RegionFileCache.releaseRegionFile(regionFile);
+		}
+		synchronized (index) {
+			index.put(key, hash);
+		}
+	}
+
+	/**
+	 * @return the tile of a chunk as {@link #TILE_SIZE} * {@link #TILE_SIZE} ARGB pixels, or null if it is not stored
+	 */
+	public int[] loadChunkTile(int chunkX, int chunkZ) {
+		long key = MapRender.getChunkKey(chunkX, chunkZ);
+		boolean inRegion;
+		boolean inLegacy;
+		synchronized (index) {
+			inRegion = index.containsKey(key);
+			inLegacy = legacyChunks.containsKey(key);
+		}
+		if (inRegion) {
+			RegionFile regionFile = RegionFileCache.acquireRegionFile(chunksDir, chunkX, chunkZ, false);
+			if (regionFile != null) {
+				try {
+					int[] argb = readTile(regionFile.read(RegionFile.getIndex(chunkX, chunkZ)));
+					if (argb != null) return argb;
+				} catch (ClosedChannelException e) {
+					// Closed because the world is being left, treat it as not stored
+				} catch (IOException | RuntimeException e) {
+					Minimap.log("Failed to load chunk tile ("+chunkX+","+chunkZ+"): "+e.getMessage());
+				} finally {
+					RegionFileCache.releaseRegionFile(regionFile);
+				}
+			}
 		}
+		return inLegacy ? loadLegacyChunkTile(chunkX, chunkZ) : null;
 	}
 
-	// -------- Chunk->hash mapping --------
+	/**
+	 * @return true if a tile is stored for the chunk
+	 */
+	public boolean hasChunkTile(int chunkX, int chunkZ) {
+		long key = MapRender.getChunkKey(chunkX, chunkZ);
+		synchronized (index) {
+			return index.containsKey(key) || legacyChunks.containsKey(key);
+		}
+	}
+
+	/**
+	 * @return the hash of the tile stored for a chunk, see {@link #computeHashARGB(int[])}, or 0 if no tile is stored
+	 */
+	public long loadChunkHash(int chunkX, int chunkZ) {
+		long key = MapRender.getChunkKey(chunkX, chunkZ);
+		synchronized (index) {
+			if (index.containsKey(key)) return index.get(key, 0L);
+			if (!legacyChunks.containsKey(key)) return 0L;
+		}
+		int[] argb = loadLegacyChunkTile(chunkX, chunkZ);
+		return argb != null ? computeHashARGB(argb) : 0L;
+	}
+
+	/**
+	 * @return true if at least one tile has been stored
+	 */
+	public boolean hasData() {
+		synchronized (index) {
+			return !index.isEmpty() || !legacyChunks.isEmpty();
+		}
+	}
+
+	/**
+	 * @return the keys of all chunks with a stored tile, as <code>chunkX &lt;&lt; 32 | chunkZ</code>
+	 */
+	public long[] indexChunkPositions() {
+		synchronized (index) {
+			long[] result = new long[index.size() + legacyChunks.size()];
+			int count = 0;
+			for (int i=0; i < index.getSlotCount(); i++) {
+				if (index.isUsed(i)) result[count++] = index.getKeyAt(i);
+			}
+			for (int i=0; i < legacyChunks.getSlotCount(); i++) {
+				if (legacyChunks.isUsed(i) && !index.containsKey(legacyChunks.getKeyAt(i))) result[count++] = legacyChunks.getKeyAt(i);
+			}
+			return count == result.length ? result : Arrays.copyOf(result, count);
+		}
+	}
+
+	private static int[] readTile(byte[] data) {
+		if (data == null) return null;
+		int[] argb = new int[TILE_SIZE * TILE_SIZE];
+		return codecs.get().decode(data, 0, data.length, argb) ? argb : null;
+	}
+
+	// -------- Old chunk->hash files --------
 
 	private File getChunkHashFile(int chunkX, int chunkZ) {
 		String name = chunkX + "_" + chunkZ + ".hash";
 		return new File(chunksDir, name);
 	}
 
-	public void saveChunkHash(int chunkX, int chunkZ, String hash) {
-		File f = getChunkHashFile(chunkX, chunkZ);
-		try (FileOutputStream out = new FileOutputStream(f)) {
-			out.write(hash.getBytes());
-		} catch (IOException e) {
-			Minimap.log("Failed to save chunk hash ("+chunkX+","+chunkZ+"):"+e.getMessage());
-		}
+	private int[] loadLegacyChunkTile(int chunkX, int chunkZ) {
+		String hash = loadLegacyChunkHash(chunkX, chunkZ);
+		return hash != null ? loadTileARGB(hash) : null;
 	}
 
-	public String loadChunkHash(int chunkX, int chunkZ) {
+	private String loadLegacyChunkHash(int chunkX, int chunkZ) {
 		File f = getChunkHashFile(chunkX, chunkZ);
 		if (!f.exists()) return null;
 		try {
-			byte[] buf = java.nio.file.Files.readAllBytes(f.toPath());
+			byte[] buf = Files.readAllBytes(f.toPath());
 			return new String(buf).trim();
 		} catch (IOException e) {
 			return null;
 		}
 	}
 
-
-	// -------- Tile content by hash --------
+	// -------- Old tile content by hash --------
 
 	private File getTileFile(String hash) {
 		// shard by first two hex to avoid huge dirs
 		String shard = hash.length() >= 2 ? hash.substring(0, 2) : "zz";
 		File dir = new File(tilesDir, shard);
-		dir.mkdirs();
 		return new File(dir, hash + ".tile");
 	}
 
-	public void saveTileARGB(String hash, int[] argb) {
-		File f = getTileFile(hash);
-		if (f.exists()) return; // already stored
-		try (FileOutputStream out = new FileOutputStream(f); FileChannel ch = out.getChannel()) {
-			ByteBuffer bb = ByteBuffer.allocate(argb.length * 4);
-			for (int v : argb) bb.putInt(v);
-			bb.flip();
-			ch.write(bb);
-		} catch (IOException e) {
-			Minimap.log("Failed to save tile "+hash+":"+e.getMessage());
-		}
-	}
-
+	/**
+	 * Load a raw tile saved by an older version by its SHA-1 hash, new tiles are loaded with {@link #loadChunkTile(int, int)}
+	 */
 	public int[] loadTileARGB(String hash) {
 		File f = getTileFile(hash);
 		if (!f.exists()) return null;
@@ -145,5 +304,3 @@ public class ChunkStorage {
 		}
 	}
 }
-
-
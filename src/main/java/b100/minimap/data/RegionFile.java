@@ -0,0 +1,301 @@
+package b100.minimap.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+import b100.minimap.Minimap;
+
+/**
+ * One file holding the tiles of 32 * 32 chunks.
+ * <p>
+ * The file starts with a header of {@link #CHUNKS} entries, one per chunk, each storing the offset
+ * of the data in sectors, the length of the data in bytes, the time it was written in seconds and
+ * a 64 bit tag chosen by the writer. An offset of 0 means the chunk is not stored. The data follows
+ * the header in sectors of {@link #SECTOR_SIZE} bytes. Data that grows past its sectors is moved to
+ * the first free run of sectors, or appended to the end of the file.
+ * <p>
+ * The file is mapped once when it is opened. Data inside the mapping is read from it, data appended
+ * later is read through the channel, and all data is written through the channel. The mapping is
+ * released when the file is closed instead of waiting for the garbage collector, which would keep
+ * the file locked on Windows.
+ * All methods are synchronized, so a region file can be shared between threads.
+ * Region files are opened and closed by {@link RegionFileCache}.
+ */
+public class RegionFile {
+
+	public static final int SHIFT = 5;
+	public static final int SIZE = 1 << SHIFT;
+	public static final int CHUNKS = SIZE * SIZE;
+
+	public static final int SECTOR_SIZE = 256;
+
+	/**
+	 * Bytes per header entry: offset, length, timestamp and tag
+	 */
+	private static final int ENTRY_SIZE = 20;
+	private static final int HEADER_SECTORS = (CHUNKS * ENTRY_SIZE + SECTOR_SIZE - 1) / SECTOR_SIZE;
+
+	public final File file;
+
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel channel;
+	private MappedByteBuffer mapped;
+
+	private final int[] offsets = new int[CHUNKS];
+	private final int[] lengths = new int[CHUNKS];
+	private final int[] timestamps = new int[CHUNKS];
+	private final long[] tags = new long[CHUNKS];
+
+	/**
+	 * One bit per sector of the file, set if the sector is in use
+	 */
+	private final BitSet usedSectors = new BitSet();
+	private int sectorCount;
+
+	private final ByteBuffer entryBuffer = ByteBuffer.allocate(ENTRY_SIZE);
+
+	/**
+	 * Number of threads using this file and if it should be closed when the last one is done,
+	 * guarded by the lock of {@link RegionFileCache}
+	 */
+	int users;
+	boolean closeOnRelease;
+
+	private boolean closed;
+
+	private static volatile boolean unmapFailed;
+
+	public RegionFile(File file) throws IOException {
+		this.file = file;
+		this.randomAccessFile = new RandomAccessFile(file, "rw");
+		this.channel = randomAccessFile.getChannel();
+
+		try {
+			if(channel.size() < HEADER_SECTORS * SECTOR_SIZE) {
+				channel.write(ByteBuffer.allocate(HEADER_SECTORS * SECTOR_SIZE - (int) channel.size()), channel.size());
+			}
+			sectorCount = (int) ((channel.size() + SECTOR_SIZE - 1) / SECTOR_SIZE);
+			usedSectors.set(0, HEADER_SECTORS);
+
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			ByteBuffer header = mapped.duplicate();
+			for(int i=0; i < CHUNKS; i++) {
+				int offset = header.getInt();
+				int length = header.getInt();
+				int timestamp = header.getInt();
+				long tag = header.getLong();
+				int sectors = getSectors(length);
+				if(offset < HEADER_SECTORS || length <= 0 || offset + sectors > sectorCount) {
+					// Broken or unused entry
+					continue;
+				}
+				offsets[i] = offset;
+				lengths[i] = length;
+				timestamps[i] = timestamp;
+				tags[i] = tag;
+				usedSectors.set(offset, offset + sectors);
+			}
+		}catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the index of a chunk in the header, the chunk coordinates can be absolute
+	 */
+	public static int getIndex(int chunkX, int chunkZ) {
+		return (chunkZ & (SIZE - 1)) << SHIFT | (chunkX & (SIZE - 1));
+	}
+
+	public synchronized boolean contains(int index) {
+		return offsets[index] != 0;
+	}
+
+	/**
+	 * @return the time the chunk was written in seconds, or 0 if it is not stored
+	 */
+	public synchronized int getTimestamp(int index) {
+		return timestamps[index];
+	}
+
+	/**
+	 * @return the tag written with the chunk, or 0 if it is not stored
+	 */
+	public synchronized long getTag(int index) {
+		return tags[index];
+	}
+
+	/**
+	 * @return the data of a chunk, or null if it is not stored
+	 */
+	public synchronized byte[] read(int index) throws IOException {
+		ensureOpen();
+		int offset = offsets[index];
+		if(offset == 0) {
+			return null;
+		}
+		int length = lengths[index];
+		long position = (long) offset * SECTOR_SIZE;
+		byte[] data = new byte[length];
+		if(position + length <= mapped.capacity()) {
+			ByteBuffer buffer = mapped.duplicate();
+			buffer.position((int) position);
+			buffer.get(data);
+		}else {
+			ByteBuffer buffer = ByteBuffer.wrap(data);
+			while(buffer.hasRemaining()) {
+				if(channel.read(buffer, position + buffer.position()) < 0) {
+					throw new IOException("Unexpected end of region file " + file.getName());
+				}
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * @param tag stored in the header, can be read without reading the data
+	 */
+	public synchronized void write(int index, byte[] data, int length, long tag) throws IOException {
+		ensureOpen();
+		int sectors = getSectors(length);
+		int offset = offsets[index];
+		int oldSectors = offset != 0 ? getSectors(lengths[index]) : 0;
+
+		if(offset == 0 || sectors > oldSectors) {
+			if(offset != 0) {
+				usedSectors.clear(offset, offset + oldSectors);
+			}
+			offset = allocate(sectors);
+		}else if(sectors < oldSectors) {
+			usedSectors.clear(offset + sectors, offset + oldSectors);
+		}
+
+		channel.write(ByteBuffer.wrap(data, 0, length), (long) offset * SECTOR_SIZE);
+		sectorCount = Math.max(sectorCount, offset + sectors);
+
+		setEntry(index, offset, length, (int) (System.currentTimeMillis() / 1000L), tag);
+	}
+
+	public synchronized void delete(int index) throws IOException {
+		ensureOpen();
+		int offset = offsets[index];
+		if(offset == 0) {
+			return;
+		}
+		usedSectors.clear(offset, offset + getSectors(lengths[index]));
+		setEntry(index, 0, 0, 0, 0L);
+	}
+
+	/**
+	 * @return the number of chunks stored in this file
+	 */
+	public synchronized int getChunkCount() {
+		int count = 0;
+		for(int i=0; i < CHUNKS; i++) {
+			if(offsets[i] != 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public synchronized void close() {
+		closed = true;
+		if(mapped != null) {
+			// Reads copy out of the mapping while holding the lock, so nothing can access it anymore
+			unmap(mapped);
+			mapped = null;
+		}
+		try {
+			channel.close();
+			randomAccessFile.close();
+		}catch (IOException e) {}
+	}
+
+	private void ensureOpen() throws IOException {
+		if(closed) {
+			throw new ClosedChannelException();
+		}
+	}
+
+	/**
+	 * Find the first run of free sectors, or append the sectors to the end of the file
+	 */
+	private int allocate(int sectors) {
+		int start = usedSectors.nextClearBit(HEADER_SECTORS);
+		while(start < sectorCount) {
+			int end = usedSectors.nextSetBit(start);
+			if(end == -1 || end - start >= sectors) {
+				break;
+			}
+			start = usedSectors.nextClearBit(end);
+		}
+		usedSectors.set(start, start + sectors);
+		return start;
+	}
+
+	private void setEntry(int index, int offset, int length, int timestamp, long tag) throws IOException {
+		offsets[index] = offset;
+		lengths[index] = length;
+		timestamps[index] = timestamp;
+		tags[index] = tag;
+
+		entryBuffer.clear();
+		entryBuffer.putInt(offset);
+		entryBuffer.putInt(length);
+		entryBuffer.putInt(timestamp);
+		entryBuffer.putLong(tag);
+		entryBuffer.flip();
+		channel.write(entryBuffer, (long) index * ENTRY_SIZE);
+	}
+
+	/**
+	 * Release a mapping now. Java 8 only offers this through the cleaner of the buffer, later versions
+	 * through Unsafe. If neither is available the mapping is left to the garbage collector.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		if(unmapFailed) {
+			return;
+		}
+		try {
+			Object unsafe = null;
+			Method invokeCleaner = null;
+			try {
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+				Field field = unsafeClass.getDeclaredField("theUnsafe");
+				field.setAccessible(true);
+				unsafe = field.get(null);
+			}catch (NoSuchMethodException e) {
+				// Java 8
+			}
+			if(invokeCleaner != null) {
+				invokeCleaner.invoke(unsafe, buffer);
+			}else {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if(cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		}catch (Exception e) {
+			unmapFailed = true;
+			Minimap.log("Can't unmap region files: " + e);
+		}
+	}
+
+	private static int getSectors(int length) {
+		return (length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+	}
+
+}
@@ -0,0 +1,123 @@
+package b100.minimap.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import b100.minimap.Minimap;
+
+/**
+ * Keeps recently used region files open, shared by all {@link ChunkStorage}s.
+ * <p>
+ * Files are pinned while they are used: every {@link #acquireRegionFile(File, boolean)} has to be followed
+ * by a {@link #releaseRegionFile(RegionFile)}. When more than {@link #MAX_OPEN_FILES} are open, the least
+ * recently used file that is not pinned is closed. Pinned files are never closed, {@link #closeAll()} closes
+ * them when they are released, so there is never more than one open {@link RegionFile} per file.
+ */
+public abstract class RegionFileCache {
+
+	public static final int MAX_OPEN_FILES = 64;
+
+	private static final Map<File, RegionFile> openFiles = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * @param create if false, null is returned when the file does not exist
+	 * @return the region file containing a chunk, or null if it does not exist or could not be opened
+	 * @see #acquireRegionFile(File, boolean)
+	 */
+	public static synchronized RegionFile acquireRegionFile(File directory, int chunkX, int chunkZ, boolean create) {
+		return acquireRegionFile(getFile(directory, chunkX >> RegionFile.SHIFT, chunkZ >> RegionFile.SHIFT), create);
+	}
+
+	/**
+	 * Open a region file, or get it if it is already open, and pin it until {@link #releaseRegionFile(RegionFile)} is called
+	 *
+	 * @param create if false, null is returned when the file does not exist
+	 * @return the region file, or null if it does not exist or could not be opened
+	 */
+	public static synchronized RegionFile acquireRegionFile(File file, boolean create) {
+		RegionFile regionFile = openFiles.get(file);
+		if(regionFile != null) {
+			regionFile.users++;
+			return regionFile;
+		}
+		if(!create && !file.exists()) {
+			return null;
+		}
+
+		if(openFiles.size() >= MAX_OPEN_FILES) {
+			// If every file is pinned, more than MAX_OPEN_FILES stay open until they are released
+			Iterator<RegionFile> iterator = openFiles.values().iterator();
+			while(iterator.hasNext()) {
+				RegionFile leastRecentlyUsed = iterator.next();
+				if(leastRecentlyUsed.users == 0) {
+					leastRecentlyUsed.close();
+					iterator.remove();
+					break;
+				}
+			}
+		}
+
+		try {
+			file.getParentFile().mkdirs();
+			regionFile = new RegionFile(file);
+		}catch (IOException e) {
+			Minimap.log("Failed to open region file '" + file.getAbsolutePath() + "': " + e.getMessage());
+			return null;
+		}
+		regionFile.users++;
+		openFiles.put(file, regionFile);
+		return regionFile;
+	}
+
+	/**
+	 * Unpin a region file returned by {@link #acquireRegionFile(File, boolean)}, it must not be used afterwards
+	 */
+	public static synchronized void releaseRegionFile(RegionFile regionFile) {
+		if(--regionFile.users == 0 && regionFile.closeOnRelease) {
+			regionFile.close();
+			openFiles.remove(regionFile.file);
+		}
+	}
+
+	public static File getFile(File directory, int regionX, int regionZ) {
+		return new File(directory, "r." + regionX + "." + regionZ + ".mmr");
+	}
+
+	/**
+	 * @return the region coordinates of a region file, or null if the file is not a region file
+	 */
+	public static int[] parseFileName(String name) {
+		if(!name.startsWith("r.") || !name.endsWith(".mmr")) {
+			return null;
+		}
+		String[] parts = name.split("\\.");
+		if(parts.length != 4) {
+			return null;
+		}
+		try {
+			return new int[] {Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+		}catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Close all open region files, called when the world is left. Files that are pinned are closed when they are released.
+	 */
+	public static synchronized void closeAll() {
+		Iterator<RegionFile> iterator = openFiles.values().iterator();
+		while(iterator.hasNext()) {
+			RegionFile regionFile = iterator.next();
+			if(regionFile.users == 0) {
+				regionFile.close();
+				iterator.remove();
+			}else {
+				regionFile.closeOnRelease = true;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,284 @@
+package b100.minimap.data;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes tiles of {@link ChunkStorage#TILE_SIZE} * {@link ChunkStorage#TILE_SIZE} ARGB pixels for the region files.
+ * <p>
+ * The first byte of an encoded tile is its format. Tiles of a single color are stored as that color,
+ * tiles with up to {@link #MAX_PALETTE} colors as a palette followed by the bit-packed palette index
+ * of every pixel, and all other tiles are deflated. Formats are never changed once they have been
+ * written, a new encoding gets a new format byte, so tiles written by older versions can always be read.
+ * <p>
+ * A codec reuses its buffers and is not thread-safe, use one codec per thread.
+ */
+public class TileCodec {
+
+	/**
+	 * Pixels as big endian ints
+	 */
+	public static final byte FORMAT_RAW = 1;
+
+	/**
+	 * One color for the whole tile
+	 */
+	public static final byte FORMAT_SOLID = 2;
+
+	/**
+	 * Number of colors - 1, the colors, then the palette index of every pixel with as few bits as needed
+	 */
+	public static final byte FORMAT_PALETTE = 3;
+
+	/**
+	 * Raw pixels compressed with deflate
+	 */
+	public static final byte FORMAT_DEFLATE = 4;
+
+	public static final int MAX_PALETTE = 64;
+
+	public static final int PIXELS = ChunkStorage.TILE_SIZE * ChunkStorage.TILE_SIZE;
+	public static final int RAW_SIZE = PIXELS * 4;
+
+	/**
+	 * Largest possible encoded tile, a raw tile with the format byte
+	 */
+	public static final int MAX_ENCODED_SIZE = 1 + RAW_SIZE;
+
+	/**
+	 * Output of {@link #encode(int[])}
+	 */
+	public final byte[] buffer = new byte[MAX_ENCODED_SIZE];
+
+	private final byte[] rawBytes = new byte[RAW_SIZE];
+
+	private final int[] palette = new int[MAX_PALETTE];
+	private final byte[] indices = new byte[PIXELS];
+
+	/**
+	 * Open addressing table from color to palette index + 1, 0 is empty
+	 */
+	private final int[] paletteTable = new int[MAX_PALETTE * 4];
+	private final int[] paletteTableColors = new int[MAX_PALETTE * 4];
+
+	private Deflater deflater;
+	private Inflater inflater;
+
+	/**
+	 * Encode a tile into {@link #buffer}
+	 *
+	 * @return the number of bytes written
+	 */
+	public int encode(int[] argb) {
+		int colors = buildPalette(argb);
+
+		if(colors == 1) {
+			buffer[0] = FORMAT_SOLID;
+			putInt(buffer, 1, argb[0]);
+			return 5;
+		}
+
+		if(colors > 0) {
+			buffer[0] = FORMAT_PALETTE;
+			buffer[1] = (byte) (colors - 1);
+			int pos = 2;
+			for(int i=0; i < colors; i++) {
+				putInt(buffer, pos, palette[i]);
+				pos += 4;
+			}
+
+			int bits = getBits(colors);
+			int acc = 0;
+			int accBits = 0;
+			for(int i=0; i < PIXELS; i++) {
+				acc = acc << bits | indices[i];
+				accBits += bits;
+				if(accBits >= 8) {
+					accBits -= 8;
+					buffer[pos++] = (byte) (acc >> accBits);
+				}
+			}
+			if(accBits > 0) {
+				buffer[pos++] = (byte) (acc << (8 - accBits));
+			}
+			return pos;
+		}
+
+		for(int i=0; i < PIXELS; i++) {
+			putInt(rawBytes, i * 4, argb[i]);
+		}
+
+		if(deflater == null) {
+			deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		}
+		deflater.reset();
+		deflater.setInput(rawBytes);
+		deflater.finish();
+		int length = deflater.deflate(buffer, 1, MAX_ENCODED_SIZE - 1);
+		if(deflater.finished() && 1 + length < MAX_ENCODED_SIZE) {
+			buffer[0] = FORMAT_DEFLATE;
+			return 1 + length;
+		}
+
+		buffer[0] = FORMAT_RAW;
+		System.arraycopy(rawBytes, 0, buffer, 1, RAW_SIZE);
+		return MAX_ENCODED_SIZE;
+	}
+
+	/**
+	 * Decode a tile written by any version
+	 *
+	 * @return false if the data is not a valid tile
+	 */
+	public boolean decode(byte[] data, int offset, int length, int[] argb) {
+		if(length < 1) {
+			return false;
+		}
+		int end = offset + length;
+		byte format = data[offset];
+		int pos = offset + 1;
+
+		if(format == FORMAT_RAW) {
+			if(length < MAX_ENCODED_SIZE) {
+				return false;
+			}
+			for(int i=0; i < PIXELS; i++) {
+				argb[i] = getInt(data, pos + i * 4);
+			}
+			return true;
+		}
+
+		if(format == FORMAT_SOLID) {
+			if(length < 5) {
+				return false;
+			}
+			int color = getInt(data, pos);
+			for(int i=0; i < PIXELS; i++) {
+				argb[i] = color;
+			}
+			return true;
+		}
+
+		if(format == FORMAT_PALETTE) {
+			if(length < 2) {
+				return false;
+			}
+			int colors = (data[pos++] & 0xFF) + 1;
+			int bits = getBits(colors);
+			if(colors > MAX_PALETTE || pos + colors * 4 + (PIXELS * bits + 7) / 8 > end) {
+				return false;
+			}
+			for(int i=0; i < colors; i++) {
+				palette[i] = getInt(data, pos);
+				pos += 4;
+			}
+
+			int mask = (1 << bits) - 1;
+			int acc = 0;
+			int accBits = 0;
+			for(int i=0; i < PIXELS; i++) {
+				if(accBits < bits) {
+					acc = acc << 8 | (data[pos++] & 0xFF);
+					accBits += 8;
+				}
+				accBits -= bits;
+				int index = (acc >> accBits) & mask;
+				if(index >= colors) {
+					return false;
+				}
+				argb[i] = palette[index];
+			}
+			return true;
+		}
+
+		if(format == FORMAT_DEFLATE) {
+			if(inflater == null) {
+				inflater = new Inflater();
+			}
+			inflater.reset();
+			inflater.setInput(data, pos, end - pos);
+			try {
+				if(inflater.inflate(rawBytes) != RAW_SIZE) {
+					return false;
+				}
+			}catch (DataFormatException e) {
+				return false;
+			}
+			for(int i=0; i < PIXELS; i++) {
+				argb[i] = getInt(rawBytes, i * 4);
+			}
+			return true;
+		}
+
+		// Written by a newer version
+		return false;
+	}
+
+	/**
+	 * Fill the palette and the palette index of every pixel
+	 *
+	 * @return the number of colors, or 0 if there are more than {@link #MAX_PALETTE}
+	 */
+	private int buildPalette(int[] argb) {
+		int tableMask = paletteTable.length - 1;
+		for(int i=0; i < paletteTable.length; i++) {
+			paletteTable[i] = 0;
+		}
+
+		int colors = 0;
+		int lastColor = 0;
+		int lastIndex = -1;
+		for(int i=0; i < PIXELS; i++) {
+			int color = argb[i];
+			if(color == lastColor && lastIndex != -1) {
+				indices[i] = (byte) lastIndex;
+				continue;
+			}
+
+			int slot = (color * 0x9E3779B9) >>> 24 & tableMask;
+			int index;
+			while(true) {
+				int entry = paletteTable[slot];
+				if(entry == 0) {
+					if(colors == MAX_PALETTE) {
+						return 0;
+					}
+					palette[colors] = color;
+					paletteTable[slot] = ++colors;
+					paletteTableColors[slot] = color;
+					index = colors - 1;
+					break;
+				}
+				if(paletteTableColors[slot] == color) {
+					index = entry - 1;
+					break;
+				}
+				slot = (slot + 1) & tableMask;
+			}
+			indices[i] = (byte) index;
+			lastColor = color;
+			lastIndex = index;
+		}
+		return colors;
+	}
+
+	/**
+	 * @return bits needed to store a palette index
+	 */
+	private static int getBits(int colors) {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(colors - 1));
+	}
+
+	private static void putInt(byte[] bytes, int pos, int value) {
+		bytes[pos] = (byte) (value >> 24);
+		bytes[pos + 1] = (byte) (value >> 16);
+		bytes[pos + 2] = (byte) (value >> 8);
+		bytes[pos + 3] = (byte) value;
+	}
+
+	private static int getInt(byte[] bytes, int pos) {
+		return (bytes[pos] & 0xFF) << 24 | (bytes[pos + 1] & 0xFF) << 16 | (bytes[pos + 2] & 0xFF) << 8 | (bytes[pos + 3] & 0xFF);
+	}
+
+}
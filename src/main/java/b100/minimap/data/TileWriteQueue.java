@@ -0,0 +1,282 @@
+package b100.minimap.data;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import b100.minimap.Minimap;
+import b100.minimap.render.MapRender;
+import b100.minimap.utils.LongObjectMap;
+
+/**
+ * Saves rendered tiles on a background thread, so the client thread never waits for the disk.
+ * <p>
+ * Tiles waiting to be written are stored by storage directory and chunk, a tile added again before it
+ * was written replaces the older one. The writer takes all waiting tiles at once and writes them sorted
+ * by region file, so every region file is opened once per batch.
+ * When {@link #MAX_PENDING} tiles are waiting, new tiles are dropped instead of waiting for the writer.
+ * A dropped tile is saved the next time its chunk is rendered.
+ */
+public class TileWriteQueue {
+
+	public static final int MAX_PENDING = 4096;
+
+	/**
+	 * Waiting tiles of each storage directory, by chunk key
+	 */
+	private final Map<File, LongObjectMap<TileWrite>> pending = new HashMap<>();
+	private int pendingCount;
+
+	private final List<TileWrite> unusedWrites = new ArrayList<>();
+	private final List<TileWrite> batch = new ArrayList<>();
+
+	private Thread thread;
+	private boolean running;
+	private boolean writing;
+	private boolean shutdown;
+
+	/**
+	 * Tiles added since the queue was created
+	 */
+	public long addedTiles;
+
+	/**
+	 * Tiles replaced by a newer version before they were written
+	 */
+	public long coalescedTiles;
+
+	/**
+	 * Tiles not queued because {@link #MAX_PENDING} tiles were waiting
+	 */
+	public long droppedTiles;
+
+	/**
+	 * Tiles written since the queue was created
+	 */
+	public long writtenTiles;
+
+	/**
+	 * Tiles written by the last batch, and how long it took in nanoseconds
+	 */
+	public int lastBatchSize;
+	public long lastBatchTime;
+
+	/**
+	 * Average time to write one tile in nanoseconds
+	 */
+	public long averageWriteTime;
+
+	/**
+	 * Queue a tile to be saved. The pixels are copied, so the array can be changed afterwards.
+	 * Never waits for the writer.
+	 *
+	 * @return false if the queue is full and the tile was dropped
+	 */
+	public synchronized boolean add(ChunkStorage storage, int chunkX, int chunkZ, int[] argb) {
+		if(shutdown) {
+			storage.saveChunkTile(chunkX, chunkZ, argb);
+			return true;
+		}
+		start();
+		LongObjectMap<TileWrite> writes = pending.get(storage.getDirectory());
+		if(writes == null) {
+			writes = new LongObjectMap<>(256);
+			pending.put(storage.getDirectory(), writes);
+		}
+		long key = MapRender.getChunkKey(chunkX, chunkZ);
+		TileWrite write = writes.get(key);
+		if(write != null) {
+			coalescedTiles++;
+		}else {
+			if(pendingCount >= MAX_PENDING) {
+				droppedTiles++;
+				return false;
+			}
+			write = unusedWrites.size() > 0 ? unusedWrites.remove(unusedWrites.size() - 1) : new TileWrite();
+			write.chunkX = chunkX;
+			write.chunkZ = chunkZ;
+			writes.put(key, write);
+			pendingCount++;
+			notifyAll();
+		}
+		write.storage = storage;
+		System.arraycopy(argb, 0, write.pixels, 0, write.pixels.length);
+		addedTiles++;
+		return true;
+	}
+
+	/**
+	 * Wait until all queued tiles have been written
+	 */
+	public synchronized void flush() {
+		while(pendingCount > 0 || writing) {
+			if(thread == null) {
+				// Not started, or already shut down
+				takeBatch();
+				finishBatch(writeBatch());
+				continue;
+			}
+			waitForWriter();
+		}
+	}
+
+	/**
+	 * Write all queued tiles and stop the writer thread, tiles added afterwards are written directly
+	 */
+	public void shutdown() {
+		Thread thread;
+		synchronized(this) {
+			flush();
+			running = false;
+			shutdown = true;
+			thread = this.thread;
+			this.thread = null;
+			notifyAll();
+		}
+		if(thread != null) {
+			try {
+				thread.join();
+			}catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return number of tiles waiting to be written, including the batch being written
+	 */
+	public synchronized int size() {
+		return pendingCount + (writing ? batch.size() : 0);
+	}
+
+	private void start() {
+		if(thread != null || shutdown) {
+			return;
+		}
+		running = true;
+		thread = new Thread(this::run, "Minimap-TileWriter");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.NORM_PRIORITY - 1);
+		thread.start();
+	}
+
+	private void run() {
+		while(true) {
+			synchronized(this) {
+				while(running && pendingCount == 0) {
+					try {
+						wait();
+					}catch (InterruptedException e) {
+						return;
+					}
+				}
+				if(!running) {
+					return;
+				}
+				takeBatch();
+			}
+			long time = writeBatch();
+			synchronized(this) {
+				finishBatch(time);
+			}
+		}
+	}
+
+	/**
+	 * Take all waiting tiles, new tiles can be added while the batch is written
+	 */
+	private void takeBatch() {
+		for(LongObjectMap<TileWrite> writes : pending.values()) {
+			for(int i=0; i < writes.getSlotCount(); i++) {
+				TileWrite write = writes.getValueAt(i);
+				if(write != null) {
+					batch.add(write);
+				}
+			}
+			writes.clear();
+		}
+		pendingCount = 0;
+		writing = true;
+		notifyAll();
+	}
+
+	/**
+	 * @return the time it took to write the batch in nanoseconds
+	 */
+	private long writeBatch() {
+		long start = System.nanoTime();
+		Collections.sort(batch, regionOrder);
+		for(int i=0; i < batch.size(); i++) {
+			TileWrite write = batch.get(i);
+			try {
+				write.storage.saveChunkTile(write.chunkX, write.chunkZ, write.pixels);
+			}catch (Throwable e) {
+				Minimap.log("Failed to save tile (" + write.chunkX + "," + write.chunkZ + "): " + e.getMessage());
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	private void finishBatch(long time) {
+		lastBatchSize = batch.size();
+		lastBatchTime = time;
+		writtenTiles += batch.size();
+		long timePerTile = time / Math.max(1, batch.size());
+		averageWriteTime = averageWriteTime == 0 ? timePerTile : (averageWriteTime * 7 + timePerTile) / 8;
+
+		for(int i=0; i < batch.size(); i++) {
+			TileWrite write = batch.get(i);
+			write.storage = null;
+			unusedWrites.add(write);
+		}
+		batch.clear();
+		writing = false;
+		notifyAll();
+	}
+
+	private void waitForWriter() {
+		try {
+			wait();
+		}catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static final Comparator<TileWrite> regionOrder = new Comparator<TileWrite>() {
+		@Override
+		public int compare(TileWrite a, TileWrite b) {
+			// Tiles of the same chunk in different dimensions are in different region files
+			int directory = a.storage.getDirectory().compareTo(b.storage.getDirectory());
+			if(directory != 0) {
+				return directory;
+			}
+			int regionA = a.chunkZ >> RegionFile.SHIFT;
+			int regionB = b.chunkZ >> RegionFile.SHIFT;
+			if(regionA != regionB) {
+				return Integer.compare(regionA, regionB);
+			}
+			regionA = a.chunkX >> RegionFile.SHIFT;
+			regionB = b.chunkX >> RegionFile.SHIFT;
+			if(regionA != regionB) {
+				return Integer.compare(regionA, regionB);
+			}
+			return Integer.compare(RegionFile.getIndex(a.chunkX, a.chunkZ), RegionFile.getIndex(b.chunkX, b.chunkZ));
+		}
+	};
+
+	private static class TileWrite {
+
+		public final int[] pixels = new int[ChunkStorage.TILE_SIZE * ChunkStorage.TILE_SIZE];
+
+		public ChunkStorage storage;
+		public int chunkX;
+		public int chunkZ;
+
+	}
+
+}
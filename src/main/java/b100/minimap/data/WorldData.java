@@ -2,7 +2,9 @@ package b100.minimap.data;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import b100.minimap.mc.IDimension;
 import com.b100.json.element.JsonArray;
@@ -22,6 +24,12 @@ public class WorldData {
 	public IDimension dimension;
 	
 	private List<Waypoint> waypoints = new ArrayList<>();
+	private int waypointVersion;
+	
+	/**
+	 * Tile storage of every visited dimension by dimension id, so the index is not loaded again when switching back
+	 */
+	private final Map<String, ChunkStorage> chunkStorages = new HashMap<>();
 	
 	private boolean savingAll = false;
 	
@@ -31,8 +39,19 @@ public class WorldData {
 		this.dimension = Minimap.instance.minecraftHelper.getDimensionFromWorld(world);
 	}
 
+	/**
+	 * @return the tile storage of the current dimension, created on first use
+	 */
 	public ChunkStorage getChunkStorage() {
-		return new ChunkStorage(directory, dimension.getId());
+		String dimensionId = dimension.getId();
+		synchronized(chunkStorages) {
+			ChunkStorage chunkStorage = chunkStorages.get(dimensionId);
+			if(chunkStorage == null) {
+				chunkStorage = new ChunkStorage(directory, dimensionId);
+				chunkStorages.put(dimensionId, chunkStorage);
+			}
+			return chunkStorage;
+		}
 	}
 	
 	public void load() {
@@ -48,6 +67,11 @@ public class WorldData {
 		
 		saveWaypoints();
 		savingAll = false;
+		
+		// Saved when the world is left, tiles still waiting to be written keep their storage
+		synchronized(chunkStorages) {
+			chunkStorages.clear();
+		}
 	}
 	
 	public void loadWaypoints() {
@@ -70,6 +94,7 @@ public class WorldData {
 		}else {
 			Minimap.log("Waypoint file '" + waypointsFile.getAbsolutePath() + "' does not exist!");
 		}
+		onWaypointsChanged();
 	}
 	
 	public void saveWaypoints() {
@@ -95,12 +120,25 @@ public class WorldData {
 	
 	public void addWaypoint(Waypoint waypoint) {
 		this.waypoints.add(waypoint);
+		onWaypointsChanged();
 	}
 	
 	public boolean remove(Waypoint waypoint) {
+		onWaypointsChanged();
 		return this.waypoints.remove(waypoint);
 	}
 	
+	/**
+	 * Must be called when a waypoint has been moved or hidden, so cached waypoint positions are updated
+	 */
+	public void onWaypointsChanged() {
+		waypointVersion++;
+	}
+	
+	public int getWaypointVersion() {
+		return waypointVersion;
+	}
+	
 	public List<Waypoint> getWaypoints() {
 		return waypoints;
 	}
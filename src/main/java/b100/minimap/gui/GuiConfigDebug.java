@@ -17,6 +17,7 @@ public class GuiConfigDebug extends GuiScreen {
 		options = add(new GuiOptionsContainer(this));
 		options.add("Masking", new GuiOptionButtonBoolean(this, minimap.config.mask));
 		options.add("Show Tiles", new GuiOptionButtonBoolean(this, minimap.config.showTiles));
+		options.add("Show Stats", new GuiOptionButtonBoolean(this, minimap.config.showStats));
 
 		navBottom = add(new GuiNavigationContainer(this, options, Position.BOTTOM));
 		navBottom.add(new GuiButtonNavigation(this, "Back", options).addActionListener((e) -> back()));
@@ -22,7 +22,12 @@ public class GuiConfigGeneral extends GuiScreen {
 		options.add("Map Visible", new GuiOptionButtonBoolean(this, config.mapVisible));
 		options.add("Map Config", new GuiButton(this, "->").addActionListener((e) -> utils.displayGui(new GuiConfigMap(this))));
 		options.add("Require Item", new GuiOptionButtonRequireItem(this, config.requireItem));
-		options.add("Update Speed", new GuiOptionButtonInteger(this, config.updateSpeed));
+		options.add("Update Budget (ms)", new GuiOptionButtonInteger(this, config.updateBudget));
+		options.add("Target FPS", new GuiOptionButtonInteger(this, config.targetFps));
+		options.add("Render Threads", new GuiOptionButtonInteger(this, config.renderThreads));
+		options.add("Prefetch Chunks", new GuiOptionButtonInteger(this, config.prefetchChunks));
+		options.add("LOD Radius", new GuiOptionButtonInteger(this, config.lodRadius));
+		options.add("Tile Memory (MB)", new GuiOptionButtonInteger(this, config.tileMemory));
 		options.add("Debug", new GuiButton(this, "->").addActionListener((e) -> utils.displayGui(new GuiConfigDebug(this))));
 		options.add("Map", new GuiButton(this, "->").addActionListener((e) -> utils.displayGui(new GuiMapViewer(this))));
 
@@ -45,9 +45,12 @@ public class GuiConfigMap extends GuiScreen implements OptionListener {
 	@Override
 	public void onOptionValueChanged(Option<?> option) {
 		MapConfig mapConfig = minimap.config.mapConfig;
-		if(option == mapConfig.shadeType || option == mapConfig.lighting || option == mapConfig.renderAllBlocks) {
+		if(option == mapConfig.shadeType || option == mapConfig.lighting) {
 			minimap.mapRender.updateAllTiles();
 		}
+		if(option == mapConfig.renderAllBlocks) {
+			minimap.mapRender.rescanAllTiles();
+		}
 		if(option == mapConfig.mapStyle || option == mapConfig.roundMap) {
 			minimap.updateStyle();
 		}
@@ -65,11 +65,11 @@ public class GuiMapViewer extends GuiScreen {
 
 	private static class PendingTexture {
 		final long key;
-		final BufferedImage image;
+		final int[] argb;
 
-		PendingTexture(long key, BufferedImage image) {
+		PendingTexture(long key, int[] argb) {
 			this.key = key;
-			this.image = image;
+			this.argb = argb;
 		}
 	}
 
@@ -203,11 +203,7 @@ public class GuiMapViewer extends GuiScreen {
 
 	private boolean hasAnyStoredData(ChunkStorage storage) {
 		try {
-			Set<Long> keys = indexPositionsCompat(storage, true);
-			if (keys != null && !keys.isEmpty()) return true;
-
-			keys = indexPositionsCompat(storage, false);
-			return keys != null && !keys.isEmpty();
+			return storage.hasData();
 		} catch (Exception e) {
 			return true;
 		}
@@ -292,9 +288,9 @@ public class GuiMapViewer extends GuiScreen {
 		if (tex != null) return tex;
 		if (missing.contains(key)) return 0;
 
-		BufferedImage img = syncLoadTileFromFiles(storage, cx, cz);
-		if (img != null) {
-			int t = utils.createTextureFromImage(img, false, false);
+		int[] argb = syncLoadTileFromFiles(storage, cx, cz);
+		if (argb != null) {
+			int t = utils.createTextureFromARGB(argb, TILE_SIZE, TILE_SIZE, false, false);
 			textureCache.put(key, t);
 			return t;
 		}
@@ -306,26 +302,17 @@ public class GuiMapViewer extends GuiScreen {
 		return 0;
 	}
 
-	private BufferedImage syncLoadTileFromFiles(ChunkStorage storage, int cx, int cz) {
+	private int[] syncLoadTileFromFiles(ChunkStorage storage, int cx, int cz) {
 		try {
-			String hash = loadHashCompat(storage, cx, cz, true);
-			if (hash == null) return null;
-
-			int[] argb = storage.loadTileARGB(hash);
+			int[] argb = storage.loadChunkTile(cx, cz);
 			if (argb == null || argb.length != TILE_SIZE * TILE_SIZE) return null;
 
-			return createImageFromARGB(argb);
+			return argb;
 		} catch (Throwable t) {
 			return null;
 		}
 	}
 
-	private BufferedImage createImageFromARGB(int[] argb) {
-		BufferedImage img = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
-		img.setRGB(0, 0, TILE_SIZE, TILE_SIZE, argb, 0, TILE_SIZE);
-		return img;
-	}
-
 	private void submitLoad(ChunkStorage storage, long key, int cx, int cz) {
 		if (loader == null) {
 			loader = Executors.newSingleThreadExecutor(r ->
@@ -337,25 +324,14 @@ public class GuiMapViewer extends GuiScreen {
 
 	private void loadChunkAsync(ChunkStorage storage, long key, int cx, int cz) {
 		try {
-			// Trying to load without lighting (priority)
-			String hash = loadHashCompat(storage, cx, cz, true);
-
-			if (hash == null) {
-				hash = loadHashCompat(storage, cx, cz, false);
-			}
-
-			BufferedImage img = null;
-
-			if (hash != null) {
-				int[] argb = storage.loadTileARGB(hash);
-				if (argb != null && argb.length == TILE_SIZE * TILE_SIZE) {
-					img = createImageFromARGB(argb);
-				}
+			int[] argb = storage.loadChunkTile(cx, cz);
+			if (argb != null && argb.length != TILE_SIZE * TILE_SIZE) {
+				argb = null;
 			}
 
-			if (img != null && pendingTextures.size() < MAX_PENDING_UPLOADS) {
-				pendingTextures.add(new PendingTexture(key, img));
-			} else if (img == null) {
+			if (argb != null && pendingTextures.size() < MAX_PENDING_UPLOADS) {
+				pendingTextures.add(new PendingTexture(key, argb));
+			} else if (argb == null) {
 				missing.add(key);
 			}
 		} catch (Exception e) {
@@ -372,7 +348,7 @@ public class GuiMapViewer extends GuiScreen {
 		int processed = 0;
 		while ((p = pendingTextures.poll()) != null && processed++ < 10) {
 			if (Thread.currentThread().isInterrupted()) break;
-			int tex = utils.createTextureFromImage(p.image, false, false);
+			int tex = utils.createTextureFromARGB(p.argb, TILE_SIZE, TILE_SIZE, false, false);
 			textureCache.put(p.key, tex);
 		}
 	}
@@ -460,73 +436,14 @@ public class GuiMapViewer extends GuiScreen {
 		super.scrollEvent(dir, mouseX, mouseY);
 	}
 
-	private String loadHashCompat(ChunkStorage storage, int cx, int cz, boolean noLightReq) {
-		try {
-			java.lang.reflect.Method m = storage.getClass()
-					.getMethod("loadChunkHash", int.class, int.class, boolean.class);
-			Object v = m.invoke(storage, cx, cz, noLightReq);
-			return v instanceof String ? (String) v : null;
-		} catch (Exception ignore) {
-			try {
-				java.lang.reflect.Method m2 = storage.getClass()
-						.getMethod("loadChunkHash", int.class, int.class);
-				Object v2 = m2.invoke(storage, cx, cz);
-				return v2 instanceof String ? (String) v2 : null;
-			} catch (Exception e) {
-				return null;
-			}
-		}
-	}
-
-	private Set<Long> indexPositionsCompat(ChunkStorage storage, boolean noLightReq) {
+	private long[] indexPositions(ChunkStorage storage) {
 		try {
-			java.lang.reflect.Method m = storage.getClass()
-					.getMethod("indexChunkPositions", boolean.class);
-			Object v = m.invoke(storage, noLightReq);
-			if (v instanceof Set) return (Set<Long>) v;
-		} catch (Exception ignore) {}
-
-		return indexFromFiles(storage, noLightReq);
-	}
-
-	private Set<Long> indexFromFiles(ChunkStorage storage, boolean noLightReq) {
-		try {
-			java.lang.reflect.Field f = storage.getClass().getDeclaredField("chunksDir");
-			f.setAccessible(true);
-			Object dirObj = f.get(storage);
-			if (!(dirObj instanceof File)) return Collections.emptySet();
-
-			File chunksDir = (File) dirObj;
-			File[] files = chunksDir.listFiles();
-			if (files == null) return Collections.emptySet();
-
-			Set<Long> keys = new HashSet<>();
-			String suffix = noLightReq ? ".nl.hash" : ".hash";
-
-			for (File file : files) {
-				parseChunkFile(file, suffix, keys);
-			}
-			return keys;
-		} catch (Throwable t) {
-			return Collections.emptySet();
+			return storage.indexChunkPositions();
+		} catch (Exception e) {
+			return new long[0];
 		}
 	}
 
-	private void parseChunkFile(File file, String suffix, Set<Long> keys) {
-		String name = file.getName();
-		if (!name.endsWith(suffix)) return;
-
-		int us = name.indexOf('_');
-		int dot = name.lastIndexOf('.');
-		if (us <= 0 || dot <= us) return;
-
-		try {
-			int x = Integer.parseInt(name.substring(0, us));
-			int z = Integer.parseInt(name.substring(us + 1, dot));
-			keys.add(makeChunkKey(x, z));
-		} catch (Throwable ignored) {}
-	}
-
 	private void drawPlayerArrow() {
 		if (mc.getThePlayer() == null) return;
 
@@ -663,11 +580,8 @@ public class GuiMapViewer extends GuiScreen {
 	private void saveWorldToPng() {
 		try {
 			ChunkStorage storage = Minimap.instance.worldData.getChunkStorage();
-			Set<Long> keys = indexPositionsCompat(storage, true);
-			if (keys == null || keys.isEmpty()) {
-				keys = indexPositionsCompat(storage, false);
-			}
-			if (keys == null || keys.isEmpty()) {
+			long[] keys = indexPositions(storage);
+			if (keys.length == 0) {
 				setHudMessage("Nothing to save (no tiles)");
 				return;
 			}
@@ -681,11 +595,11 @@ public class GuiMapViewer extends GuiScreen {
 		}
 	}
 
-	private int[] calculateBounds(Set<Long> keys) {
+	private int[] calculateBounds(long[] keys) {
 		int minCx = Integer.MAX_VALUE, minCz = Integer.MAX_VALUE;
 		int maxCx = Integer.MIN_VALUE, maxCz = Integer.MIN_VALUE;
 
-		for (Long k : keys) {
+		for (long k : keys) {
 			int cx = (int) (k >>> 32);
 			int cz = (int) (k & 0xffffffffL);
 			minCx = Math.min(minCx, cx);
@@ -697,21 +611,17 @@ public class GuiMapViewer extends GuiScreen {
 		return new int[]{minCx, minCz, maxCx, maxCz};
 	}
 
-	private BufferedImage createWorldImage(ChunkStorage storage, Set<Long> keys, int[] bounds) {
+	private BufferedImage createWorldImage(ChunkStorage storage, long[] keys, int[] bounds) {
 		int minCx = bounds[0], minCz = bounds[1], maxCx = bounds[2], maxCz = bounds[3];
 		int imgW = (maxCx - minCx + 1) * TILE_SIZE;
 		int imgH = (maxCz - minCz + 1) * TILE_SIZE;
 		BufferedImage img = new BufferedImage(imgW, imgH, BufferedImage.TYPE_INT_ARGB);
 
-		for (Long k : keys) {
+		for (long k : keys) {
 			int cx = (int) (k >>> 32);
 			int cz = (int) (k & 0xffffffffL);
 
-			String hash = loadHashCompat(storage, cx, cz, true);
-			if (hash == null) hash = loadHashCompat(storage, cx, cz, false);
-			if (hash == null) continue;
-
-			int[] argb = storage.loadTileARGB(hash);
+			int[] argb = storage.loadChunkTile(cx, cz);
 			if (argb == null || argb.length != TILE_SIZE * TILE_SIZE) continue;
 
 			int ox = (cx - minCx) * TILE_SIZE;
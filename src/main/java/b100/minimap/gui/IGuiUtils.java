@@ -28,4 +28,9 @@ public interface IGuiUtils {
 
 	public int createTextureFromImage(java.awt.image.BufferedImage image, boolean filter, boolean repeat);
 	
+	/**
+	 * Create a texture from ARGB pixels, see {@link b100.minimap.utils.TilePixels}
+	 */
+	public int createTextureFromARGB(int[] argb, int width, int height, boolean filter, boolean repeat);
+	
 }
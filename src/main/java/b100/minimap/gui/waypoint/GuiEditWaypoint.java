@@ -23,6 +23,7 @@ public class GuiEditWaypoint extends GuiEditWaypointBase {
 	@Override
 	public void cancel() {
 		this.waypoint.set(original);
+		minimap.worldData.onWaypointsChanged();
 		back();
 	}
 
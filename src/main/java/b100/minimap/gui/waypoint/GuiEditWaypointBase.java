@@ -163,6 +163,7 @@ public abstract class GuiEditWaypointBase extends GuiScreen implements TextCompo
 		this.waypoint.x = this.textComponentX.getValue() + playerOffsetX;
 		this.waypoint.y = this.textComponentY.getValue() + playerOffsetY;
 		this.waypoint.z = this.textComponentZ.getValue() + playerOffsetZ;
+		minimap.worldData.onWaypointsChanged();
 	}
 	
 	@Override
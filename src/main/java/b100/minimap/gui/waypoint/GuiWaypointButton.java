@@ -51,6 +51,7 @@ public class GuiWaypointButton extends GuiButton {
 			screen.add(contextMenu);
 		}else {
 			waypoint.visible = !waypoint.visible;
+			minimap.worldData.onWaypointsChanged();
 		}
 		
 		
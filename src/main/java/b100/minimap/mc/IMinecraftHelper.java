@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 
+import b100.minimap.render.BlockUpdateBuffer;
 import b100.minimap.render.WorldListener;
 import b100.minimap.render.block.BlockRenderManager;
 import b100.minimap.render.block.TileColors;
@@ -33,6 +34,16 @@ public interface IMinecraftHelper {
 	
 	public void removeWorldListener(World world, WorldListener listener);
 	
+	/**
+	 * Publish the world changes collected since the last call to the world listeners
+	 */
+	public void flushWorldListeners();
+	
+	/**
+	 * @return the collected world changes, or null if changes are published immediately
+	 */
+	public BlockUpdateBuffer getBlockUpdateBuffer();
+	
 	public IPlayer getThePlayer();
 	
 	public int generateTexture();
@@ -2,8 +2,13 @@ package b100.minimap.mc.impl;
 
 import static org.lwjgl.opengl.GL11.*;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
 import b100.minimap.gui.GuiScreen;
 import b100.minimap.gui.IGuiUtils;
+import b100.minimap.utils.TilePixels;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.render.tessellator.Tessellator;
 import net.minecraft.client.GLAllocation;
@@ -165,4 +170,26 @@ public class GuiUtilsImpl implements IGuiUtils {
 		return texture;
 	}
 
+	private IntBuffer pixelBuffer;
+
+	@Override
+	public int createTextureFromARGB(int[] argb, int width, int height, boolean filter, boolean repeat) {
+		if(pixelBuffer == null || pixelBuffer.capacity() < width * height) {
+			pixelBuffer = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+		}
+		IntBuffer buffer = pixelBuffer;
+		buffer.clear();
+		buffer.put(argb, 0, width * height);
+		buffer.flip();
+
+		int texture = GLAllocation.generateTexture();
+		glBindTexture(GL_TEXTURE_2D, texture);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, filter ? GL_LINEAR : GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, filter ? GL_LINEAR : GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, repeat ? GL_REPEAT : GL_CLAMP);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, repeat ? GL_REPEAT : GL_CLAMP);
+		glTexImage2D(GL_TEXTURE_2D, 0, TilePixels.INTERNAL_FORMAT, width, height, 0, TilePixels.FORMAT, TilePixels.TYPE, buffer);
+		return texture;
+	}
+
 }
@@ -15,6 +15,7 @@ import b100.minimap.mc.IMinecraftHelper;
 import b100.minimap.mc.IPlayer;
 import com.b100.utils.ReflectUtils;
 
+import b100.minimap.render.BlockUpdateBuffer;
 import b100.minimap.render.WorldListener;
 import b100.minimap.render.block.BlockRenderManager;
 import b100.minimap.render.block.RenderType;
@@ -91,6 +92,16 @@ public class MinecraftHelperImpl implements IMinecraftHelper {
 		worldAccessImpl.listeners.remove(listener);
 	}
 
+	@Override
+	public void flushWorldListeners() {
+		worldAccessImpl.flush();
+	}
+
+	@Override
+	public BlockUpdateBuffer getBlockUpdateBuffer() {
+		return worldAccessImpl.updateBuffer;
+	}
+
 	@Override
 	public IPlayer getThePlayer() {
 		PlayerLocal player = mc.thePlayer;
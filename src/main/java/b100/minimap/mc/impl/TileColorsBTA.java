@@ -17,8 +17,8 @@ import net.minecraft.client.render.texture.stitcher.AtlasStitcher;
 import net.minecraft.client.render.texture.stitcher.IconCoordinate;
 import net.minecraft.client.render.texture.stitcher.TextureRegistry;
 import net.minecraft.core.block.Block;
+import net.minecraft.core.block.Blocks;
 import net.minecraft.core.util.helper.Side;
-import net.minecraft.core.world.World;
 
 public class TileColorsBTA extends TileColors {
 
@@ -26,7 +26,11 @@ public class TileColorsBTA extends TileColors {
 
 	public Minecraft mc;
 
-	public final Map<IconCoordinate, Integer> mapColors = new HashMap<>();
+	/**
+	 * Colors are read by the tile rendering threads while {@link #createTileColors()} runs on the client thread,
+	 * so they are never changed after they have been published here
+	 */
+	private volatile Colors colors = new Colors(new HashMap<>(), new int[0], new boolean[0]);
 
 	private TileColorsBTA(Minecraft minecraft) {
 		this.mc = minecraft;
@@ -34,7 +38,7 @@ public class TileColorsBTA extends TileColors {
 
 	@Override
 	public void createTileColors() {
-		mapColors.clear();
+		Map<IconCoordinate, Integer> mapColors = new HashMap<>();
 		AtlasStitcher atlas = TextureRegistry.blockAtlas;
 		BufferedImage atlasImage = (atlas != null) ? atlas.atlas : null;
 		if (atlas == null || atlasImage == null) {
@@ -56,13 +60,59 @@ public class TileColorsBTA extends TileColors {
 		IconCoordinate water_flowing = TextureRegistry.blockAtlas.textureMap.get("minecraft:water_flowing");
 		if (water_still != null) mapColors.put(water_still, waterColorOverride);
 		if (water_flowing != null) mapColors.put(water_flowing, waterColorOverride);
+
+		createColorTable(mapColors);
+	}
+
+	/**
+	 * @return true if the average colors of the textures have been created
+	 */
+	public boolean hasColors() {
+		return !colors.mapColors.isEmpty();
+	}
+
+	private void createColorTable(Map<IconCoordinate, Integer> mapColors) {
+		Block[] blocks = Blocks.blocksList;
+		int[] table = new int[blocks.length << 4];
+		boolean[] slow = new boolean[blocks.length];
+
+		int slowCount = 0;
+		for (int id = 0; id < blocks.length; id++) {
+			Block block = blocks[id];
+			if (block == null) {
+				continue;
+			}
+			try {
+				for (int meta = 0; meta < 16; meta++) {
+					table[id << 4 | meta] = getTileColorFromModel(mapColors, block, meta);
+				}
+			} catch (Exception e) {
+				slow[id] = true;
+				slowCount++;
+			}
+		}
+
+		this.colors = new Colors(mapColors, table, slow);
+
+		if (slowCount > 0) {
+			Minimap.log(slowCount + " blocks use the slow tile color path");
+		}
 	}
 
 	@Override
-	public int getTileColor(World world, int x, int y, int z, Block block) {
+	public int getTileColor(Block block, int metadata) {
+		Colors colors = this.colors;
+		int id = block.id();
+		if (metadata >= 0 && metadata < 16 && id < colors.slowPath.length && !colors.slowPath[id]) {
+			return colors.colorTable[id << 4 | metadata];
+		}
+		return getTileColorFromModel(colors.mapColors, block, metadata);
+	}
+
+	private int getTileColorFromModel(Map<IconCoordinate, Integer> mapColors, Block block, int metadata) {
 		BlockModel<?> model = BlockModelDispatcher.getInstance().getDispatch(block);
 
-		IconCoordinate texture = model.getBlockTextureFromSideAndMetadata(Side.TOP, world.getBlockMetadata(x, y, z));
+		IconCoordinate texture = model.getBlockTextureFromSideAndMetadata(Side.TOP, metadata);
 
 		Integer color = mapColors.get(texture);
 		if(color == null) {
@@ -74,8 +124,31 @@ public class TileColorsBTA extends TileColors {
 	public void onOptionValueChanged(GameSettings settings, Option<?> option) {
 		if(option == settings.biomeWater) {
 			createTileColors();
-			Minimap.instance.mapRender.updateAllTiles();
+			// Water tints are part of the column summaries
+			Minimap.instance.mapRender.rescanAllTiles();
+		}
+	}
+
+	private static class Colors {
+
+		public final Map<IconCoordinate, Integer> mapColors;
+
+		/**
+		 * Base color for every block id and metadata, indexed by <code>(id << 4) | metadata</code>
+		 */
+		public final int[] colorTable;
+
+		/**
+		 * Blocks whose color could not be baked into the color table
+		 */
+		public final boolean[] slowPath;
+
+		public Colors(Map<IconCoordinate, Integer> mapColors, int[] colorTable, boolean[] slowPath) {
+			this.mapColors = mapColors;
+			this.colorTable = colorTable;
+			this.slowPath = slowPath;
 		}
+
 	}
 
 }
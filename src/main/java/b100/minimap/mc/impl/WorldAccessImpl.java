@@ -3,6 +3,7 @@ package b100.minimap.mc.impl;
 import java.util.ArrayList;
 import java.util.List;
 
+import b100.minimap.render.BlockUpdateBuffer;
 import b100.minimap.render.WorldListener;
 import net.minecraft.core.block.entity.TileEntity;
 import net.minecraft.core.entity.Entity;
@@ -14,11 +15,18 @@ public class WorldAccessImpl implements LevelListener {
 
 	public List<WorldListener> listeners = new ArrayList<>();
 	
+	public final BlockUpdateBuffer updateBuffer = new BlockUpdateBuffer();
+	
+	/**
+	 * Publish the changes collected since the last call to the listeners
+	 */
+	public void flush() {
+		updateBuffer.flush(listeners);
+	}
+	
 	@Override
 	public void blockChanged(int x, int y, int z) {
-		for(int i=0; i < listeners.size(); i++) {
-			listeners.get(i).onUpdateBlock(x, y, z);
-		}
+		updateBuffer.markBlock(x, z);
 	}
 
 	@Override
@@ -43,9 +51,7 @@ public class WorldAccessImpl implements LevelListener {
 
 	@Override
 	public void setBlocksDirty(int var1, int var2, int var3, int var4, int var5, int var6) {
-		for(int i=0; i < listeners.size(); i++) {
-			listeners.get(i).onUpdateBlocks(var1, var2, var3, var4, var5, var6);
-		}
+		updateBuffer.markBlocks(var1, var3, var4, var6);
 	}
 
 	@Override
@@ -65,9 +71,7 @@ public class WorldAccessImpl implements LevelListener {
 
 	@Override
 	public void allChanged(boolean arg0, boolean arg1) {
-		for(int i=0; i < listeners.size(); i++) {
-			listeners.get(i).onUpdateAllChunks();
-		}
+		updateBuffer.markAll();
 	}
 
 	@Override
@@ -0,0 +1,124 @@
+package b100.minimap.render;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import b100.minimap.utils.LongObjectMap;
+
+/**
+ * Collects block changes as dirty columns per chunk and publishes them to {@link WorldListener}s
+ * as one batch, so a chunk changed many times between two frames is only updated once.
+ * Must only be accessed from the client thread.
+ */
+public class BlockUpdateBuffer {
+
+	/**
+	 * Events received since the buffer was created
+	 */
+	public long rawEvents;
+
+	/**
+	 * Chunk updates published since the buffer was created
+	 */
+	public long publishedEvents;
+
+	public int lastRawEvents;
+	public int lastPublishedEvents;
+
+	private int rawEventsSinceFlush;
+	private boolean allChanged;
+
+	private final LongObjectMap<long[]> dirtyChunks = new LongObjectMap<>(256);
+	private final List<long[]> unusedMasks = new ArrayList<>();
+
+	public void markBlock(int x, int z) {
+		rawEventsSinceFlush++;
+		ColumnMask.set(getMask(x >> 4, z >> 4), x, z);
+	}
+
+	/**
+	 * Mark all columns inside a block rectangle as changed, bounds are inclusive
+	 */
+	public void markBlocks(int x0, int z0, int x1, int z1) {
+		rawEventsSinceFlush++;
+		for(int chunkX = x0 >> 4; chunkX <= x1 >> 4; chunkX++) {
+			for(int chunkZ = z0 >> 4; chunkZ <= z1 >> 4; chunkZ++) {
+				ColumnMask.setRect(getMask(chunkX, chunkZ), x0 - (chunkX << 4), z0 - (chunkZ << 4), x1 - (chunkX << 4), z1 - (chunkZ << 4));
+			}
+		}
+	}
+
+	public void markAll() {
+		rawEventsSinceFlush++;
+		allChanged = true;
+	}
+
+	/**
+	 * Publish all changes since the last flush to the listeners and clear the buffer
+	 */
+	public void flush(List<WorldListener> listeners) {
+		int published = 0;
+
+		if(allChanged) {
+			for(int i=0; i < listeners.size(); i++) {
+				listeners.get(i).onUpdateAllChunks();
+			}
+			published = 1;
+		}else {
+			for(int slot=0; slot < dirtyChunks.getSlotCount(); slot++) {
+				long[] mask = dirtyChunks.getValueAt(slot);
+				if(mask == null) {
+					continue;
+				}
+				long key = dirtyChunks.getKeyAt(slot);
+				int chunkX = MapRender.getChunkX(key);
+				int chunkZ = MapRender.getChunkZ(key);
+				for(int i=0; i < listeners.size(); i++) {
+					listeners.get(i).onUpdateChunkColumns(chunkX, chunkZ, mask);
+				}
+			}
+			published = dirtyChunks.size();
+		}
+
+		lastRawEvents = rawEventsSinceFlush;
+		lastPublishedEvents = published;
+		rawEvents += rawEventsSinceFlush;
+		publishedEvents += published;
+
+		clear();
+	}
+
+	public void clear() {
+		if(!dirtyChunks.isEmpty()) {
+			for(int slot=0; slot < dirtyChunks.getSlotCount(); slot++) {
+				long[] mask = dirtyChunks.getValueAt(slot);
+				if(mask != null) {
+					ColumnMask.clear(mask);
+					unusedMasks.add(mask);
+				}
+			}
+			dirtyChunks.clear();
+		}
+		rawEventsSinceFlush = 0;
+		allChanged = false;
+	}
+
+	public boolean isEmpty() {
+		return !allChanged && dirtyChunks.isEmpty();
+	}
+
+	private long[] getMask(int chunkX, int chunkZ) {
+		long key = MapRender.getChunkKey(chunkX, chunkZ);
+		long[] mask = dirtyChunks.get(key);
+		if(mask == null) {
+			if(unusedMasks.size() > 0) {
+				mask = unusedMasks.remove(unusedMasks.size() - 1);
+			}else {
+				mask = ColumnMask.create();
+			}
+			dirtyChunks.put(key, mask);
+		}
+		return mask;
+	}
+
+}
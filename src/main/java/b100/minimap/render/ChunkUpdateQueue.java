@@ -0,0 +1,210 @@
+package b100.minimap.render;
+
+import b100.minimap.utils.LongObjectMap;
+
+/**
+ * Chunks waiting to be rendered, ordered by their distance to a focus point.
+ * <p>
+ * The focus is where the player is expected to be shortly, so tiles ahead of the
+ * player come first. Chunks are added when they enter the view or change, and
+ * priorities are only recomputed when the focus has moved by at least a chunk.
+ * Chunks are stored by their key, see {@link MapRender#getChunkKey(int, int)}.
+ */
+public class ChunkUpdateQueue {
+
+	private long[] heap = new long[1024];
+	private int[] priorities = new int[1024];
+	private int size;
+
+	private final LongObjectMap<Boolean> queued = new LongObjectMap<>(1024);
+	private final LongObjectMap<Boolean> deferred = new LongObjectMap<>(256);
+
+	private int centerX;
+	private int centerZ;
+	private int radius = -1;
+
+	private double focusX;
+	private double focusZ;
+	private double sortedFocusX;
+	private double sortedFocusZ;
+
+	/**
+	 * Set the square of chunks that can be rendered, chunks that become visible are added to the queue
+	 */
+	public void setView(int centerX, int centerZ, int radius) {
+		if(centerX == this.centerX && centerZ == this.centerZ && radius == this.radius) {
+			return;
+		}
+		int oldCenterX = this.centerX;
+		int oldCenterZ = this.centerZ;
+		int oldRadius = this.radius;
+
+		this.centerX = centerX;
+		this.centerZ = centerZ;
+		this.radius = radius;
+
+		for(int i = -radius; i <= radius; i++) {
+			for(int j = -radius; j <= radius; j++) {
+				int chunkX = centerX + i;
+				int chunkZ = centerZ + j;
+				if(oldRadius < 0 || Math.max(Math.abs(chunkX - oldCenterX), Math.abs(chunkZ - oldCenterZ)) > oldRadius) {
+					add(chunkX, chunkZ);
+				}
+			}
+		}
+
+		retryDeferred();
+	}
+
+	/**
+	 * Set the point chunks are sorted around, in chunk coordinates
+	 */
+	public void setFocus(double x, double z) {
+		focusX = x;
+		focusZ = z;
+
+		double dx = focusX - sortedFocusX;
+		double dz = focusZ - sortedFocusZ;
+		if(dx * dx + dz * dz >= 1.0) {
+			sort();
+		}
+	}
+
+	public boolean isInView(int chunkX, int chunkZ) {
+		return Math.max(Math.abs(chunkX - centerX), Math.abs(chunkZ - centerZ)) <= radius;
+	}
+
+	public void add(int chunkX, int chunkZ) {
+		if(!isInView(chunkX, chunkZ)) {
+			return;
+		}
+		long key = MapRender.getChunkKey(chunkX, chunkZ);
+		if(queued.put(key, Boolean.TRUE) != null) {
+			return;
+		}
+		if(size == heap.length) {
+			long[] newHeap = new long[size * 2];
+			int[] newPriorities = new int[size * 2];
+			System.arraycopy(heap, 0, newHeap, 0, size);
+			System.arraycopy(priorities, 0, newPriorities, 0, size);
+			heap = newHeap;
+			priorities = newPriorities;
+		}
+		heap[size] = key;
+		priorities[size] = getPriority(key);
+		siftUp(size++);
+	}
+
+	/**
+	 * Remember a chunk that can't be rendered yet, it is added again by {@link #retryDeferred()}
+	 */
+	public void defer(long key) {
+		deferred.put(key, Boolean.TRUE);
+	}
+
+	public void retryDeferred() {
+		if(deferred.isEmpty()) {
+			return;
+		}
+		for(int i=0; i < deferred.getSlotCount(); i++) {
+			if(deferred.getValueAt(i) != null) {
+				long key = deferred.getKeyAt(i);
+				add(MapRender.getChunkX(key), MapRender.getChunkZ(key));
+			}
+		}
+		deferred.clear();
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the key of the chunk with the highest priority, the queue must not be empty
+	 */
+	public long peek() {
+		return heap[0];
+	}
+
+	public long poll() {
+		long key = heap[0];
+		queued.remove(key);
+		size--;
+		if(size > 0) {
+			heap[0] = heap[size];
+			priorities[0] = priorities[size];
+			siftDown(0);
+		}
+		return key;
+	}
+
+	public void clear() {
+		size = 0;
+		queued.clear();
+		deferred.clear();
+		radius = -1;
+	}
+
+	private void sort() {
+		sortedFocusX = focusX;
+		sortedFocusZ = focusZ;
+		for(int i=0; i < size; i++) {
+			priorities[i] = getPriority(heap[i]);
+		}
+		for(int i = size / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	/**
+	 * Squared distance between the chunk center and the focus, in 1/4 chunks
+	 */
+	private int getPriority(long key) {
+		double dx = (MapRender.getChunkX(key) + 0.5 - sortedFocusX) * 4.0;
+		double dz = (MapRender.getChunkZ(key) + 0.5 - sortedFocusZ) * 4.0;
+		return (int) Math.min(dx * dx + dz * dz, Integer.MAX_VALUE);
+	}
+
+	private void siftUp(int i) {
+		long key = heap[i];
+		int priority = priorities[i];
+		while(i > 0) {
+			int parent = (i - 1) >> 1;
+			if(priorities[parent] <= priority) {
+				break;
+			}
+			heap[i] = heap[parent];
+			priorities[i] = priorities[parent];
+			i = parent;
+		}
+		heap[i] = key;
+		priorities[i] = priority;
+	}
+
+	private void siftDown(int i) {
+		long key = heap[i];
+		int priority = priorities[i];
+		while(true) {
+			int child = 2 * i + 1;
+			if(child >= size) {
+				break;
+			}
+			if(child + 1 < size && priorities[child + 1] < priorities[child]) {
+				child++;
+			}
+			if(priorities[child] >= priority) {
+				break;
+			}
+			heap[i] = heap[child];
+			priorities[i] = priorities[child];
+			i = child;
+		}
+		heap[i] = key;
+		priorities[i] = priority;
+	}
+
+}
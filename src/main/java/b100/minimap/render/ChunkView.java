@@ -0,0 +1,174 @@
+package b100.minimap.render;
+
+import java.util.Arrays;
+
+import net.minecraft.core.world.chunk.Chunk;
+import net.minecraft.core.world.chunk.ChunkSection;
+import net.minecraft.core.world.chunk.NibbleArray;
+
+/**
+ * Copy of the block, metadata and light arrays of the chunk of a tile. It is taken on the
+ * client thread, so the columns of the tile can be scanned on a worker thread without
+ * touching the world. The scan only reads the columns of its own chunk, so neighbouring
+ * chunks are not copied. Coordinates passed to the getters are block coordinates inside
+ * the chunk.
+ * <p>
+ * Only the sections up to the highest non-empty one are copied, the arrays are kept
+ * for the next copy.
+ */
+public class ChunkView {
+
+	public static final int MAX_LIGHT = 15;
+
+	private short[][] blocks = new short[0][];
+	private byte[][] metadata = new byte[0][];
+	private byte[][] skyLight = new byte[0][];
+	private byte[][] blockLight = new byte[0][];
+
+	/**
+	 * False for sections that were missing or had no blocks when the chunk was copied
+	 */
+	private boolean[] hasBlocks = new boolean[0];
+
+	/**
+	 * Highest y of the highest non-empty section, see {@link #getTopSectionY()}
+	 */
+	private int topSectionY = -1;
+
+	public int worldHeight = 256;
+
+	/**
+	 * Copy the sections of a chunk. Must be called on the client thread.
+	 */
+	public void copy(Chunk chunk) {
+		setSectionCount(worldHeight >> 4);
+		topSectionY = -1;
+
+		if(chunk == null) {
+			return;
+		}
+
+		int topSection = -1;
+		for(int section = (worldHeight >> 4) - 1; section >= 0; section--) {
+			ChunkSection chunkSection = chunk.getSection(section);
+			// Sections without a block array have never contained blocks
+			if(chunkSection != null && chunkSection.blocks != null) {
+				topSection = section;
+				break;
+			}
+		}
+
+		for(int section = 0; section < hasBlocks.length; section++) {
+			ChunkSection chunkSection = section <= topSection ? chunk.getSection(section) : null;
+			if(chunkSection == null || chunkSection.blocks == null) {
+				hasBlocks[section] = false;
+				continue;
+			}
+			hasBlocks[section] = true;
+			blocks[section] = copy(chunkSection.blocks, blocks[section]);
+			metadata[section] = copy(chunkSection.data, metadata[section]);
+			skyLight[section] = copy(chunkSection.skylightMap, skyLight[section]);
+			blockLight[section] = copy(chunkSection.blocklightMap, blockLight[section]);
+		}
+
+		if(topSection != -1) {
+			topSectionY = (topSection << 4) + 15;
+		}
+	}
+
+	/**
+	 * Use arrays in the layout of {@link ChunkSection} for a section. The arrays are not copied,
+	 * so they must not be passed to a view that is copied into later. Arrays may be null.
+	 */
+	public void setSection(int section, short[] blocks, byte[] metadata, byte[] skyLight, byte[] blockLight) {
+		if(section >= hasBlocks.length) {
+			setSectionCount(section + 1);
+		}
+		hasBlocks[section] = blocks != null;
+		this.blocks[section] = blocks;
+		this.metadata[section] = metadata;
+		this.skyLight[section] = skyLight;
+		this.blockLight[section] = blockLight;
+		if(blocks != null) {
+			topSectionY = Math.max(topSectionY, (section << 4) + 15);
+		}
+	}
+
+	public void clear() {
+		for(int section = 0; section < hasBlocks.length; section++) {
+			hasBlocks[section] = false;
+		}
+		topSectionY = -1;
+	}
+
+	public int getBlockId(int x, int y, int z) {
+		int section = y >> 4;
+		if(y < 0 || section >= hasBlocks.length || !hasBlocks[section]) {
+			return 0;
+		}
+		return blocks[section][ChunkSection.makeBlockIndex(x, y & 15, z)];
+	}
+
+	public int getBlockMetadata(int x, int y, int z) {
+		return getNibble(metadata, x, y, z, 0);
+	}
+
+	/**
+	 * @return the sky light at a position, full light in sections without blocks
+	 */
+	public int getSkyLight(int x, int y, int z) {
+		return getNibble(skyLight, x, y, z, MAX_LIGHT);
+	}
+
+	public int getBlockLight(int x, int y, int z) {
+		return getNibble(blockLight, x, y, z, 0);
+	}
+
+	/**
+	 * @return the highest y of the highest section of the chunk that has blocks, all blocks above it are air. -1 if the chunk is empty.
+	 */
+	public int getTopSectionY() {
+		return topSectionY;
+	}
+
+	private int getNibble(byte[][] nibbles, int x, int y, int z, int missing) {
+		int section = y >> 4;
+		if(y < 0 || section >= hasBlocks.length || !hasBlocks[section] || nibbles[section] == null) {
+			return missing;
+		}
+		int index = ChunkSection.makeBlockIndex(x, y & 15, z);
+		int value = nibbles[section][index >> 1];
+		return (index & 1) == 0 ? value & 0xF : (value >> 4) & 0xF;
+	}
+
+	private void setSectionCount(int count) {
+		if(hasBlocks.length == count) {
+			return;
+		}
+		blocks = Arrays.copyOf(blocks, count);
+		metadata = Arrays.copyOf(metadata, count);
+		skyLight = Arrays.copyOf(skyLight, count);
+		blockLight = Arrays.copyOf(blockLight, count);
+		hasBlocks = Arrays.copyOf(hasBlocks, count);
+	}
+
+	private static short[] copy(short[] src, short[] dst) {
+		if(dst == null || dst.length != src.length) {
+			dst = new short[src.length];
+		}
+		System.arraycopy(src, 0, dst, 0, src.length);
+		return dst;
+	}
+
+	private static byte[] copy(NibbleArray src, byte[] dst) {
+		if(src == null || src.data == null) {
+			return null;
+		}
+		if(dst == null || dst.length != src.data.length) {
+			dst = new byte[src.data.length];
+		}
+		System.arraycopy(src.data, 0, dst, 0, src.data.length);
+		return dst;
+	}
+
+}
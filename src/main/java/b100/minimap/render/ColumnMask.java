@@ -0,0 +1,146 @@
+package b100.minimap.render;
+
+/**
+ * Operations on a set of the 16x16 columns of a chunk, stored as 256 bits in a long[4].
+ * Column (x, z) is bit <code>z * 16 + x</code>, so every long holds four rows of 16 columns.
+ */
+public abstract class ColumnMask {
+
+	public static final int LENGTH = 4;
+
+	public static long[] create() {
+		return new long[LENGTH];
+	}
+
+	public static void set(long[] mask, int x, int z) {
+		int column = ColumnSummary.getColumnIndex(x, z);
+		mask[column >> 6] |= 1L << (column & 63);
+	}
+
+	public static boolean isSet(long[] mask, int x, int z) {
+		int column = ColumnSummary.getColumnIndex(x, z);
+		return (mask[column >> 6] & (1L << (column & 63))) != 0;
+	}
+
+	/**
+	 * Set all columns in a rectangle, bounds are inclusive and clamped to the chunk
+	 */
+	public static void setRect(long[] mask, int x0, int z0, int x1, int z1) {
+		x0 = Math.max(x0, 0);
+		z0 = Math.max(z0, 0);
+		x1 = Math.min(x1, 15);
+		z1 = Math.min(z1, 15);
+		if(x0 > x1 || z0 > z1) {
+			return;
+		}
+		long row = ((1L << (x1 - x0 + 1)) - 1) << x0;
+		for(int z = z0; z <= z1; z++) {
+			mask[z >> 2] |= row << ((z & 3) << 4);
+		}
+	}
+
+	/**
+	 * Set all columns of a mask that are set in another mask
+	 */
+	public static void add(long[] mask, long[] other) {
+		for(int i=0; i < LENGTH; i++) {
+			mask[i] |= other[i];
+		}
+	}
+
+	/**
+	 * Clear all columns of a mask that are not set in another mask
+	 */
+	public static void retain(long[] mask, long[] other) {
+		for(int i=0; i < LENGTH; i++) {
+			mask[i] &= other[i];
+		}
+	}
+
+	/**
+	 * Clear all columns of a mask that are set in another mask
+	 */
+	public static void remove(long[] mask, long[] other) {
+		for(int i=0; i < LENGTH; i++) {
+			mask[i] &= ~other[i];
+		}
+	}
+
+	/**
+	 * Set every step-th column in both directions, starting at column (offset, offset)
+	 */
+	public static void setSamples(long[] mask, int step, int offset) {
+		for(int z = offset; z < 16; z += step) {
+			for(int x = offset; x < 16; x += step) {
+				set(mask, x, z);
+			}
+		}
+	}
+
+	/**
+	 * Grow a mask by one column in every direction, including diagonals, within the chunk
+	 */
+	public static void dilate(long[] mask, long[] result) {
+		int above = 0;
+		int row = getRow(mask, 0);
+		for(int z=0; z < 16; z++) {
+			int below = z < 15 ? getRow(mask, z + 1) : 0;
+			int rows = above | row | below;
+			int dilated = (rows | (rows << 1) | (rows >>> 1)) & 0xFFFF;
+			setRow(result, z, dilated);
+			above = row;
+			row = below;
+		}
+	}
+
+	/**
+	 * @return the 16 columns of row z as the lowest 16 bits
+	 */
+	public static int getRow(long[] mask, int z) {
+		return (int) (mask[z >> 2] >>> ((z & 3) << 4)) & 0xFFFF;
+	}
+
+	private static void setRow(long[] mask, int z, int row) {
+		int shift = (z & 3) << 4;
+		mask[z >> 2] = (mask[z >> 2] & ~(0xFFFFL << shift)) | ((long) row << shift);
+	}
+
+	public static void setAll(long[] mask) {
+		for(int i=0; i < LENGTH; i++) {
+			mask[i] = -1L;
+		}
+	}
+
+	public static void clear(long[] mask) {
+		for(int i=0; i < LENGTH; i++) {
+			mask[i] = 0L;
+		}
+	}
+
+	public static boolean isEmpty(long[] mask) {
+		return (mask[0] | mask[1] | mask[2] | mask[3]) == 0L;
+	}
+
+	/**
+	 * Get the smallest rectangle containing all set columns as <code>{x0, z0, x1, z1}</code>, bounds are inclusive.
+	 * The mask must not be empty.
+	 */
+	public static void getBounds(long[] mask, int[] bounds) {
+		int columns = 0;
+		int z0 = 16;
+		int z1 = -1;
+		for(int z=0; z < 16; z++) {
+			int row = getRow(mask, z);
+			if(row != 0) {
+				columns |= row;
+				if(z0 == 16) z0 = z;
+				z1 = z;
+			}
+		}
+		bounds[0] = Integer.numberOfTrailingZeros(columns);
+		bounds[1] = z0;
+		bounds[2] = 31 - Integer.numberOfLeadingZeros(columns);
+		bounds[3] = z1;
+	}
+
+}
@@ -0,0 +1,120 @@
+package b100.minimap.render;
+
+/**
+ * The visible top of each of the 16x16 block columns of one chunk.
+ * <p>
+ * A column is shaded from its top opaque block, with the top transparent block
+ * mixed over it once per transparent block between the two. Tints and light are
+ * stored separately from the block, so lighting and color settings can be
+ * changed without scanning the world again.
+ */
+public class ColumnSummary {
+
+	public static final int COLUMNS = 16 * 16;
+
+	/**
+	 * Light values are stored as 16.16 fixed point shifted right by this amount
+	 */
+	public static final int LIGHT_SHIFT = 4;
+
+	public int chunkX;
+	public int chunkZ;
+
+	/**
+	 * Neighbors in the least recently used list of {@link ColumnSummaryCache}
+	 */
+	ColumnSummary newer;
+	ColumnSummary older;
+
+	/**
+	 * Columns that have been scanned at least once, see {@link ColumnMask}. Level of detail tiles only scan some columns.
+	 */
+	public final long[] scannedColumns = ColumnMask.create();
+
+	/**
+	 * True if any column of the chunk contains a non-invisible block
+	 */
+	public boolean hasVisibleBlocks;
+
+	/**
+	 * Columns that have changed since they were scanned, see {@link ColumnMask}
+	 */
+	public final long[] dirtyColumns = ColumnMask.create();
+
+	/**
+	 * Height of the top non-invisible block, -1 if there is none
+	 */
+	public final short[] topY = new short[COLUMNS];
+
+	/**
+	 * Height of the top opaque block, -1 if there is none
+	 */
+	public final short[] opaqueY = new short[COLUMNS];
+	public final short[] opaqueBlock = new short[COLUMNS];
+	public final byte[] opaqueMetadata = new byte[COLUMNS];
+	public final int[] opaqueTint = new int[COLUMNS];
+	public final short[] opaqueLight = new short[COLUMNS];
+
+	/**
+	 * Number of transparent blocks above the top opaque block
+	 */
+	public final byte[] transparentDepth = new byte[COLUMNS];
+	public final short[] transparentBlock = new short[COLUMNS];
+	public final byte[] transparentMetadata = new byte[COLUMNS];
+	public final int[] transparentTint = new int[COLUMNS];
+	public final short[] transparentLight = new short[COLUMNS];
+
+	public void setPosition(int chunkX, int chunkZ) {
+		this.chunkX = chunkX;
+		this.chunkZ = chunkZ;
+		ColumnMask.clear(dirtyColumns);
+		ColumnMask.clear(scannedColumns);
+		for(int column=0; column < COLUMNS; column++) {
+			clearColumn(column);
+		}
+	}
+
+	public void clearColumn(int column) {
+		topY[column] = -1;
+		opaqueY[column] = -1;
+		transparentDepth[column] = 0;
+	}
+
+	/**
+	 * Copy the columns to another summary, the dirty columns are not copied
+	 */
+	public void copyTo(ColumnSummary other) {
+		other.chunkX = chunkX;
+		other.chunkZ = chunkZ;
+		ColumnMask.clear(other.scannedColumns);
+		ColumnMask.add(other.scannedColumns, scannedColumns);
+		other.hasVisibleBlocks = hasVisibleBlocks;
+
+		System.arraycopy(topY, 0, other.topY, 0, COLUMNS);
+
+		System.arraycopy(opaqueY, 0, other.opaqueY, 0, COLUMNS);
+		System.arraycopy(opaqueBlock, 0, other.opaqueBlock, 0, COLUMNS);
+		System.arraycopy(opaqueMetadata, 0, other.opaqueMetadata, 0, COLUMNS);
+		System.arraycopy(opaqueTint, 0, other.opaqueTint, 0, COLUMNS);
+		System.arraycopy(opaqueLight, 0, other.opaqueLight, 0, COLUMNS);
+
+		System.arraycopy(transparentDepth, 0, other.transparentDepth, 0, COLUMNS);
+		System.arraycopy(transparentBlock, 0, other.transparentBlock, 0, COLUMNS);
+		System.arraycopy(transparentMetadata, 0, other.transparentMetadata, 0, COLUMNS);
+		System.arraycopy(transparentTint, 0, other.transparentTint, 0, COLUMNS);
+		System.arraycopy(transparentLight, 0, other.transparentLight, 0, COLUMNS);
+	}
+
+	public static short encodeLight(int light) {
+		return (short) Math.min(light >> LIGHT_SHIFT, 0xFFFF);
+	}
+
+	public static int decodeLight(short light) {
+		return (light & 0xFFFF) << LIGHT_SHIFT;
+	}
+
+	public static int getColumnIndex(int x, int z) {
+		return (z & 15) << 4 | (x & 15);
+	}
+
+}
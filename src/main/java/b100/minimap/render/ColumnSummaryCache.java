@@ -0,0 +1,135 @@
+package b100.minimap.render;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import b100.minimap.utils.LongObjectMap;
+
+/**
+ * Keeps the {@link ColumnSummary} of recently rendered chunks, evicting the least recently used
+ * summary once the capacity is reached. Must only be accessed from the client thread.
+ * <p>
+ * Summaries are linked in order of use through their own fields, so neither lookups nor
+ * evictions allocate.
+ */
+public class ColumnSummaryCache {
+
+	public final int capacity;
+
+	private final List<ColumnSummary> unusedSummaries = new ArrayList<>();
+
+	private final LongObjectMap<ColumnSummary> summaries;
+
+	/**
+	 * Most and least recently used summary
+	 */
+	private ColumnSummary newest;
+	private ColumnSummary oldest;
+
+	/**
+	 * Incremented whenever all summaries are invalidated, so scans that were started before are not stored
+	 */
+	private int generation;
+
+	public ColumnSummaryCache(int capacity) {
+		this.capacity = capacity;
+		this.summaries = new LongObjectMap<>(Math.min(capacity, 1024));
+	}
+
+	public ColumnSummary get(int chunkX, int chunkZ) {
+		ColumnSummary summary = summaries.get(MapRender.getChunkKey(chunkX, chunkZ));
+		if(summary != null && summary != newest) {
+			unlink(summary);
+			linkNewest(summary);
+		}
+		return summary;
+	}
+
+	/**
+	 * Add an empty summary for a chunk, replacing the existing one
+	 */
+	public ColumnSummary create(int chunkX, int chunkZ) {
+		ColumnSummary summary;
+		if(unusedSummaries.size() > 0) {
+			summary = unusedSummaries.remove(unusedSummaries.size() - 1);
+		}else {
+			summary = new ColumnSummary();
+		}
+		summary.setPosition(chunkX, chunkZ);
+
+		ColumnSummary old = summaries.put(MapRender.getChunkKey(chunkX, chunkZ), summary);
+		if(old != null) {
+			unlink(old);
+			unusedSummaries.add(old);
+		}
+		linkNewest(summary);
+
+		if(summaries.size() > capacity) {
+			ColumnSummary eldest = oldest;
+			summaries.remove(MapRender.getChunkKey(eldest.chunkX, eldest.chunkZ));
+			unlink(eldest);
+			unusedSummaries.add(eldest);
+		}
+		return summary;
+	}
+
+	/**
+	 * Mark columns of a cached summary as changed, see {@link ColumnMask}
+	 */
+	public void markDirty(int chunkX, int chunkZ, long[] columns) {
+		ColumnSummary summary = summaries.get(MapRender.getChunkKey(chunkX, chunkZ));
+		if(summary != null) {
+			ColumnMask.add(summary.dirtyColumns, columns);
+		}
+	}
+
+	public void invalidateAll() {
+		ColumnSummary summary = newest;
+		while(summary != null) {
+			ColumnSummary next = summary.older;
+			summary.newer = null;
+			summary.older = null;
+			unusedSummaries.add(summary);
+			summary = next;
+		}
+		newest = null;
+		oldest = null;
+		summaries.clear();
+		generation++;
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	public int size() {
+		return summaries.size();
+	}
+
+	private void linkNewest(ColumnSummary summary) {
+		summary.newer = null;
+		summary.older = newest;
+		if(newest != null) {
+			newest.newer = summary;
+		}else {
+			oldest = summary;
+		}
+		newest = summary;
+	}
+
+	private void unlink(ColumnSummary summary) {
+		if(summary.newer != null) {
+			summary.newer.older = summary.older;
+		}else {
+			newest = summary.older;
+		}
+		if(summary.older != null) {
+			summary.older.newer = summary.newer;
+		}else {
+			oldest = summary.newer;
+		}
+		summary.newer = null;
+		summary.older = null;
+	}
+
+}
@@ -0,0 +1,20 @@
+package b100.minimap.render;
+
+import static org.lwjgl.opengl.GL11.*;
+
+import java.nio.IntBuffer;
+
+import b100.minimap.utils.TilePixels;
+
+/**
+ * Uploads pixels with glTexSubImage2D directly from the direct buffer filled by {@link TileUploadQueue}.
+ */
+public class GLTileUploader implements TileUploader {
+	
+	@Override
+	public void upload(int texture, int x, int y, int width, int height, IntBuffer pixels) {
+		glBindTexture(GL_TEXTURE_2D, texture);
+		glTexSubImage2D(GL_TEXTURE_2D, 0, x, y, width, height, TilePixels.FORMAT, TilePixels.TYPE, pixels);
+	}
+	
+}
@@ -4,12 +4,46 @@ public class MapChunk {
 	
 	private int posX;
 	private int posZ;
-	private int index;
+	private long key;
 	
-	public int tile = -1;
+	/**
+	 * True if the chunk has a tile in a region texture, see {@link RegionCompositor#addTile(int, int, int)}
+	 */
+	public boolean hasTile = false;
+	
+	/**
+	 * Level of detail of the tile, tiles of level of detail n are 16 >> n pixels wide
+	 */
+	public int lod = 0;
 	
 	public boolean needsUpdate = false;
 	
+	/**
+	 * Pixels that have to be shaded again because a column they depend on has changed, see {@link ColumnMask}
+	 */
+	public final long[] dirtyColumns = ColumnMask.create();
+	
+	/**
+	 * ARGB colors of the tile as they were last uploaded
+	 */
+	public final int[] pixels = new int[16 * 16];
+	
+	/**
+	 * True if {@link #pixels} contains a complete rendered tile, so dirty columns can be rendered on their own
+	 */
+	public boolean hasPixels = false;
+	
+	/**
+	 * Level of detail the pixels were rendered at. Level of detail tiles only shade every (1 << lod)-th column, so their
+	 * pixels can't be used for a higher resolution tile.
+	 */
+	public int pixelsLod = 0;
+	
+	/**
+	 * Tile job currently being rendered for this chunk, null if there is none
+	 */
+	public TileJob job;
+	
 	public MapChunk() {
 		
 	}
@@ -17,7 +51,9 @@ public class MapChunk {
 	public MapChunk setPosition(int posX, int posZ) {
 		this.posX = posX;
 		this.posZ = posZ;
-		this.index = MapRender.getChunkIndex(posX, posZ);
+		this.key = MapRender.getChunkKey(posX, posZ);
+		this.hasPixels = false;
+		ColumnMask.clear(dirtyColumns);
 		return this;
 	}
 	
@@ -29,8 +65,8 @@ public class MapChunk {
 		return posZ;
 	}
 	
-	public int getIndex() {
-		return index;
+	public long getKey() {
+		return key;
 	}
 
 }
@@ -0,0 +1,49 @@
+package b100.minimap.render;
+
+/**
+ * A texture with the tiles of 8 * 8 chunks at one level of detail, so they can be drawn with a single quad.
+ * Chunks are numbered (chunkZ & 7) * 8 + (chunkX & 7) in the masks.
+ */
+public class MapRegion {
+
+	public static final int SHIFT = 3;
+	public static final int SIZE = 1 << SHIFT;
+
+	/**
+	 * Width of a full resolution tile in pixels
+	 */
+	public static final int TILE_WIDTH = 16;
+
+	public final int regionX;
+	public final int regionZ;
+	public final int lod;
+	public final int texture;
+
+	/**
+	 * Chunks that have a tile in this region, the region is deleted when there are none left
+	 */
+	public long presentChunks;
+
+	/**
+	 * View of {@link RegionCompositor} this region was last inside of
+	 */
+	int lastView;
+
+	/**
+	 * Neighbors in the least recently used list of {@link RegionCompositor}
+	 */
+	MapRegion newer;
+	MapRegion older;
+
+	public MapRegion(int regionX, int regionZ, int lod, int texture) {
+		this.regionX = regionX;
+		this.regionZ = regionZ;
+		this.lod = lod;
+		this.texture = texture;
+	}
+
+	public static int getIndex(int chunkX, int chunkZ) {
+		return (chunkZ & (SIZE - 1)) << SHIFT | (chunkX & (SIZE - 1));
+	}
+
+}
@@ -3,45 +3,94 @@ package b100.minimap.render;
 import static b100.minimap.utils.Utils.*;
 import static org.lwjgl.opengl.GL11.*;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.IntBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import b100.minimap.Minimap;
 import b100.minimap.config.MapConfig;
+import b100.minimap.data.TileWriteQueue;
 import b100.minimap.mc.IDimension;
 import b100.minimap.mc.IPlayer;
 import b100.minimap.render.style.MapStyle;
+import b100.minimap.utils.LongObjectMap;
+import b100.minimap.utils.TilePixels;
 import b100.minimap.waypoint.Waypoint;
+import b100.minimap.waypoint.WaypointGrid;
 import net.minecraft.client.render.tessellator.Tessellator;
-import net.minecraft.client.render.texture.Texture;
 import net.minecraft.core.entity.player.Player;
 import net.minecraft.core.util.helper.MathHelper;
 import net.minecraft.core.world.World;
 
 public class MapRender implements WorldListener {
 
+	/**
+	 * Seconds ahead the player position is predicted when ordering tile updates
+	 */
+	public static final double PREDICTION_TIME = 1.5;
+
+	/**
+	 * Frames after which chunks that couldn't be rendered because their neighbours weren't loaded are tried again
+	 */
+	public static final int DEFERRED_RETRY_INTERVAL = 20;
+
+	/**
+	 * Number of tile resolutions, tiles of level of detail n are 16 >> n pixels wide
+	 */
+	public static final int LOD_LEVELS = 3;
+
+	public static final int MIN_VIEW_RADIUS = 2;
+	public static final int MAX_VIEW_RADIUS = 64;
+
 	private Minimap minimap;
 	private World world;
 
 	private RenderHelper renderHelper = new RenderHelper();
 
-	private List<MapChunk> renderChunksUnused = new ArrayList<>();
+	private ArrayDeque<MapChunk> renderChunksUnused = new ArrayDeque<>();
 	private List<MapChunk> renderChunksUsed = new ArrayList<>();
-	private Map<Integer, MapChunk> chunks = new HashMap<>();
+	private LongObjectMap<MapChunk> chunks = new LongObjectMap<>(2048);
 
-	public final MapTileManager mapTileManager;
+	/**
+	 * Tiles composited into region textures, this is what the map is drawn from
+	 */
+	public final RegionCompositor regionCompositor;
 	public final MapTileRenderer mapTileRenderer;
+	public final TileRenderPipeline tilePipeline;
+	public final TileUpdateScheduler tileScheduler = new TileUpdateScheduler();
+	public final ChunkUpdateQueue chunkUpdateQueue = new ChunkUpdateQueue();
 
 	public final int maskTexture;
 	public final int mapTexture;
 
-	private ByteBuffer colorBuffer = ByteBuffer.allocateDirect(16 * 16 * 4).order(ByteOrder.nativeOrder());
-	private IntBuffer colorBufferInt = colorBuffer.asIntBuffer();
+	/**
+	 * Display list with the quads of the visible tiles, see {@link TileQuadCache}
+	 */
+	private final int tileDisplayList;
+	public final TileQuadCache tileQuadCache = new TileQuadCache();
+
+	private TileSnapshot snapshot = new TileSnapshot();
+	private int[] pixels = new int[16 * 16];
+	private IntBuffer pixelBuffer = IntBuffer.wrap(pixels);
+
+	private WaypointGrid waypointGrid = new WaypointGrid();
+	private List<WaypointMarker> onMapMarkers = new ArrayList<>();
+	private List<WaypointMarker> edgeMarkers = new ArrayList<>();
+
+	/**
+	 * Waypoints outside of the cells the map can show, always drawn as arrows on the edge.
+	 * Only collected again when the waypoints change or the visible cells move.
+	 */
+	private List<Waypoint> edgeWaypoints = new ArrayList<>();
+	private boolean edgeWaypointsValid;
+	private int edgeCellX0, edgeCellZ0, edgeCellX1, edgeCellZ1;
+	private int onMapMarkerCount;
+	private int edgeMarkerCount;
+	private double waypointSin;
+	private double waypointCos;
+	private int[] dirtyBounds = new int[4];
+	private long[] dilatedColumns = ColumnMask.create();
 
 	///////////////////////////////
 
@@ -50,6 +99,11 @@ public class MapRender implements WorldListener {
 
 	public int viewRadius = 16;
 
+	/**
+	 * Distance from the map center to the farthest visible point of the map in screen pixels
+	 */
+	public int visibleExtent;
+
 	public double playerPosX;
 	public double playerPosY;
 	public double playerPosZ;
@@ -59,6 +113,17 @@ public class MapRender implements WorldListener {
 
 	public double playerRotation;
 
+	/**
+	 * Smoothed player velocity in blocks per second
+	 */
+	public double playerVelocityX;
+	public double playerVelocityZ;
+
+	private double lastPlayerPosX;
+	private double lastPlayerPosZ;
+	private long lastFrameTime;
+	private int frameCounter;
+
 	public int playerChunkX;
 	public int playerChunkZ;
 
@@ -84,11 +149,13 @@ public class MapRender implements WorldListener {
 	public MapRender(Minimap minimap) {
 		this.minimap = minimap;
 
-		mapTileManager = new MapTileManager(minimap, 64);
+		regionCompositor = new RegionCompositor(minimap, LOD_LEVELS, new GLTileUploader());
 		mapTileRenderer = new MapTileRenderer(minimap);
+		tilePipeline = new TileRenderPipeline(mapTileRenderer);
 
 		maskTexture = minimap.minecraftHelper.generateTexture();
 		mapTexture = minimap.minecraftHelper.generateTexture();
+		tileDisplayList = glGenLists(1);
 	}
 
 	public void setStyle(MapStyle style) {
@@ -111,18 +178,114 @@ public class MapRender implements WorldListener {
 
 		mapConfig = minimap.config.mapConfig;
 
-		viewRadius = 16;
+		updateMapLayout();
+
+		updatePlayerVelocity();
+		chunkUpdateQueue.setView(playerChunkX, playerChunkZ, viewRadius);
+		// Render the tiles around where the player will be in a moment first
+		double maxOffset = viewRadius * 8;
+		double focusX = playerPosX + clamp(playerVelocityX * PREDICTION_TIME, -maxOffset, maxOffset);
+		double focusZ = playerPosZ + clamp(playerVelocityZ * PREDICTION_TIME, -maxOffset, maxOffset);
+		chunkUpdateQueue.setFocus(focusX / 16.0, focusZ / 16.0);
+		if (++frameCounter % DEFERRED_RETRY_INTERVAL == 0) {
+			chunkUpdateQueue.retryDeferred();
+		}
+
+		tilePipeline.setThreadCount(minimap.config.renderThreads.value);
+		tileScheduler.beginFrame(minimap.config.updateBudget.value * 1000000L, minimap.config.targetFps.value);
+
+		updateTileMemory();
+
+		long start = System.nanoTime();
+		processFinishedTiles();
+		tileScheduler.onWorkDone(System.nanoTime() - start);
 
 		updateChunks();
 
+		regionCompositor.flush();
+
 		glPushMatrix();
 		drawMapOnScreen();
 		glPopMatrix();
 	}
 
-	private void drawMapOnScreen() {
-		tessellator = Tessellator.instance;
+	/**
+	 * Apply the tile memory limit to the region textures of all levels of detail, for when the limit has been lowered.
+	 * Regions that are needed for the view are kept even if they don't fit.
+	 */
+	private void updateTileMemory() {
+		regionCompositor.setView(playerChunkX - viewRadius, playerChunkZ - viewRadius, playerChunkX + viewRadius, playerChunkZ + viewRadius);
+
+		long budget = minimap.config.tileMemory.value * 1024L * 1024L;
+		regionCompositor.setMemoryBudget(budget);
+		while (regionCompositor.getMemoryUsage() > budget && evictRegion()) {
+		}
+	}
+
+	/**
+	 * @return the level of detail for tiles at a distance from the player in chunks
+	 */
+	public int getLod(int distance) {
+		int lodRadius = minimap.config.lodRadius.value;
+		if (lodRadius <= 0) {
+			return 0;
+		}
+		return Math.min(distance / (lodRadius + 1), LOD_LEVELS - 1);
+	}
+
+	/**
+	 * Like {@link #getLod(int)}, but a chunk only goes back to a higher resolution once it is a chunk inside the boundary, so chunks on the boundary don't switch back and forth
+	 */
+	private int getLod(MapChunk chunk, int distance) {
+		int lod = getLod(distance);
+		if (lod < chunk.lod && getLod(distance + 1) >= chunk.lod) {
+			return chunk.lod;
+		}
+		return lod;
+	}
+
+	/**
+	 * Move the tile of a chunk to the regions of another level of detail. If the chunk has rendered pixels of the same
+	 * or a higher resolution they are downsampled again, otherwise the chunk has to be rendered.
+	 */
+	private void setChunkLod(MapChunk chunk, int lod) {
+		if (chunk.hasTile) {
+			freeTile(chunk);
+		}
+		chunk.lod = lod;
+
+		if (chunk.hasPixels && chunk.pixelsLod <= lod && allocateTile(chunk)) {
+			regionCompositor.markTile(chunk.getPosX(), chunk.getPosZ(), chunk.lod, chunk.pixels);
+			return;
+		}
+		chunk.needsUpdate = true;
+		chunkUpdateQueue.add(chunk.getPosX(), chunk.getPosZ());
+	}
+
+	private void updatePlayerVelocity() {
+		long now = System.nanoTime();
+		double seconds = (now - lastFrameTime) / 1000000000.0;
+		double dx = playerPosX - lastPlayerPosX;
+		double dz = playerPosZ - lastPlayerPosZ;
 
+		if (lastFrameTime == 0 || seconds <= 0.0 || seconds > 1.0 || dx * dx + dz * dz > 64 * 64) {
+			// First frame, paused or teleported
+			playerVelocityX = 0.0;
+			playerVelocityZ = 0.0;
+		} else {
+			playerVelocityX += (dx / seconds - playerVelocityX) * 0.1;
+			playerVelocityZ += (dz / seconds - playerVelocityZ) * 0.1;
+		}
+
+		lastFrameTime = now;
+		lastPlayerPosX = playerPosX;
+		lastPlayerPosZ = playerPosZ;
+	}
+
+	/**
+	 * Compute the position, size and zoom of the map on the screen and the chunks that have to be rendered
+	 */
+	private void updateMapLayout() {
 		int displayWidth = minimap.minecraftHelper.getDisplayWidth();
 		int displayHeight = minimap.minecraftHelper.getDisplayHeight();
 
@@ -175,6 +338,32 @@ public class MapRender implements WorldListener {
 
 		tileSize = 16 * zoom;
 
+		// Distance from the map center to the farthest point of the map that is on the screen
+		int visibleX = Math.max(Math.min(mapPosX + mapWidth, displayWidth) - mapCenterX, mapCenterX - Math.max(mapPosX, 0));
+		int visibleY = Math.max(Math.min(mapPosY + mapHeight, displayHeight) - mapCenterY, mapCenterY - Math.max(mapPosY, 0));
+		visibleX = Math.max(0, Math.min(visibleX, mapWidth / 2));
+		visibleY = Math.max(0, Math.min(visibleY, mapHeight / 2));
+
+		if (roundMap) {
+			visibleExtent = Math.min(Math.max(visibleX, visibleY), mapWidth / 2);
+		} else if (mapConfig.rotateMap.value) {
+			// Corners of a rotated square map can show anything within its half diagonal
+			visibleExtent = (int) Math.ceil(Math.sqrt(visibleX * visibleX + visibleY * visibleY));
+		} else {
+			visibleExtent = Math.max(visibleX, visibleY);
+		}
+
+		// One extra chunk because the player isn't in the center of their chunk
+		int radius = (visibleExtent + tileSize - 1) / tileSize + 1 + minimap.config.prefetchChunks.value;
+		viewRadius = Math.max(MIN_VIEW_RADIUS, Math.min(radius, MAX_VIEW_RADIUS));
+	}
+
+	private void drawMapOnScreen() {
+		tessellator = Tessellator.instance;
+
+		int displayWidth = minimap.minecraftHelper.getDisplayWidth();
+		int displayHeight = minimap.minecraftHelper.getDisplayHeight();
+
 		///////////////////////////////
 
 		glEnable(GL_BLEND);
@@ -255,8 +444,9 @@ public class MapRender implements WorldListener {
 
 		renderPlayerArrow();
 
-		if (minimap.config.showTiles.value) {
-			glBindTexture(GL_TEXTURE_2D, mapTileManager.texture);
+		MapRegion playerRegion = regionCompositor.getRegion(playerChunkX, playerChunkZ, 0);
+		if (minimap.config.showTiles.value && playerRegion != null) {
+			glBindTexture(GL_TEXTURE_2D, playerRegion.texture);
 			glDisable(GL_TEXTURE_2D);
 			glColor3d(0.0, 0.0,0.0);
 			tessellator.startDrawingQuads();
@@ -268,58 +458,107 @@ public class MapRender implements WorldListener {
 			renderHelper.drawRectangle(tessellator, 0, 0, 512, 512, 0.0f, 0.0f, 1.0f, 1.0f, 0);
 			tessellator.draw();
 		}
+
+		if (minimap.config.showStats.value) {
+			renderStats();
+		}
 	}
 
-	public void renderMapTiles() {
-		glBindTexture(GL_TEXTURE_2D, mapTileManager.texture);
+	private void renderStats() {
+		List<String> lines = new ArrayList<>();
 
-		boolean startedDrawing = false;
+		BlockUpdateBuffer updateBuffer = minimap.minecraftHelper.getBlockUpdateBuffer();
+		if (updateBuffer != null) {
+			lines.add("Block updates: " + updateBuffer.lastRawEvents + " -> " + updateBuffer.lastPublishedEvents + " (total " + updateBuffer.rawEvents + " -> " + updateBuffer.publishedEvents + ")");
+		}
+		lines.add("Tile jobs: " + tilePipeline.getJobsInFlight() + ", queued chunks: " + chunkUpdateQueue.size());
+		lines.add("Tile updates: " + tileScheduler.tiles + ", " + tileScheduler.used / 1000 + " / " + tileScheduler.budget / 1000 + " us, " + tileScheduler.costPerColumn + " ns per column");
+		for (int lod=0; lod < LOD_LEVELS; lod++) {
+			int tileWidth = regionCompositor.getTileWidth(lod);
+			TileUploadQueue uploadQueue = regionCompositor.getUploadQueue(lod);
+			lines.add("Tiles " + tileWidth + "x" + tileWidth + ": " + regionCompositor.getTileCount(lod) + " / " + regionCompositor.getSlotCount(lod) + ", regions: " + regionCompositor.getRegionCount(lod) + " (" + regionCompositor.getMemoryUsage(lod) / 1024 + " KB), uploads: " + uploadQueue.lastTiles + " tiles in " + uploadQueue.lastUploads + " calls");
+		}
+		lines.add("Regions: " + regionCompositor.getRegionCount() + " (" + regionCompositor.getMemoryUsage() / 1024 + " / " + regionCompositor.getMemoryBudget() / 1024 + " KB), geometry rebuilds: " + tileQuadCache.rebuilds);
+		TileWriteQueue writeQueue = minimap.tileWriteQueue;
+		lines.add("Tile saves: " + writeQueue.size() + " queued, " + writeQueue.writtenTiles + " written, " + writeQueue.coalescedTiles + " coalesced, " + writeQueue.droppedTiles + " dropped, " + writeQueue.averageWriteTime / 1000 + " us per tile, last batch " + writeQueue.lastBatchSize + " in " + writeQueue.lastBatchTime / 1000 + " us");
+		lines.add("Column summaries: " + mapTileRenderer.summaryCache.size() + " / " + mapTileRenderer.summaryCache.capacity);
 
+		glEnable(GL_TEXTURE_2D);
+		glColor3d(1.0, 1.0, 1.0);
+		for (int i=0; i < lines.size(); i++) {
+			renderHelper.drawString(lines.get(i), 2, 2 + i * 10, 0xFFFFFFFF, true);
+		}
+	}
+
+	public void renderMapTiles() {
 		playerBlockX = MathHelper.floor(playerPosX);
 		playerBlockZ = MathHelper.floor(playerPosZ);
 
-		int wh = mapWidth / 2;
-		int hh = mapHeight / 2;
-
 		for (int i=0; i < renderChunksUsed.size(); i++) {
 			MapChunk mapChunk = renderChunksUsed.get(i);
 
 			int distance = Math.max(Math.abs(playerChunkX - mapChunk.getPosX()), Math.abs(playerChunkZ - mapChunk.getPosZ()));
 			// Keep older tiles around a bit longer to avoid visible popping when opening fullscreen
 			if (distance > viewRadius + 6) {
-				renderChunksUsed.remove(i--);
+				removeUsedChunk(i--);
 				setChunkNotInUse(mapChunk);
 				continue;
 			}
-
-			int tile = mapChunk.tile;
-			if (tile == -1) {
-				continue;
+			if (distance > viewRadius && mapChunk.job != null) {
+				mapChunk.job.cancel();
+				mapChunk.job = null;
+				mapChunk.needsUpdate = true;
 			}
 
-			if (!startedDrawing) {
-				startedDrawing = true;
-				tessellator.startDrawingQuads();
+			int lod = getLod(mapChunk, distance);
+			if (lod != mapChunk.lod) {
+				setChunkLod(mapChunk, lod);
 			}
+		}
 
-			int x0 = mapChunk.getPosX() * 16 * zoom - (int) (playerPosX * zoom);
-			int z0 = mapChunk.getPosZ() * 16 * zoom - (int) (playerPosZ * zoom);
+		// Map pixel position of the player, casted to int so tiles line up with the screen pixels
+		int offsetX = (int) (playerPosX * zoom);
+		int offsetZ = (int) (playerPosZ * zoom);
 
-			int extend = 0;
-			if (mapConfig.rotateMap.value && !roundMap) {
-				extend = 48;
-			}
+		if (tileQuadCache.update(regionCompositor.getVersion(), zoom, minimap.config.lodRadius.value, offsetX, offsetZ, visibleExtent, tileSize)) {
+			glNewList(tileDisplayList, GL_COMPILE);
+			buildTileQuads();
+			glEndList();
+		}
 
-			if (x0 < wh + extend && z0 < hh + extend && x0 + tileSize > -wh - extend && z0 + tileSize > -hh - extend) {
-				int x1 = (int) x0;
-				int y1 = (int) z0;
+		glPushMatrix();
+		glTranslated(tileQuadCache.getOriginX() * tileSize - offsetX, tileQuadCache.getOriginZ() * tileSize - offsetZ, 0);
+		glCallList(tileDisplayList);
+		glPopMatrix();
+	}
 
-				renderTile(tessellator, tile, x1, y1, tileSize, tileSize, 0);
-			}
-		}
+	/**
+	 * Draw the regions that overlap the visible chunks relative to the origin of {@link #tileQuadCache}
+	 */
+	private void buildTileQuads() {
+		int originX = tileQuadCache.getOriginX();
+		int originZ = tileQuadCache.getOriginZ();
+		int regionSize = MapRegion.SIZE * tileSize;
 
-		if (startedDrawing) {
-			tessellator.draw();
+		for (int lod=0; lod < LOD_LEVELS; lod++) {
+			LongObjectMap<MapRegion> regions = regionCompositor.getRegions(lod);
+
+			for (int i=0; i < regions.getSlotCount(); i++) {
+				MapRegion region = regions.getValueAt(i);
+				if (region == null) {
+					continue;
+				}
+				int chunkX = region.regionX << MapRegion.SHIFT;
+				int chunkZ = region.regionZ << MapRegion.SHIFT;
+				if (!tileQuadCache.isInRange(chunkX, chunkZ, chunkX + MapRegion.SIZE - 1, chunkZ + MapRegion.SIZE - 1)) {
+					continue;
+				}
+
+				glBindTexture(GL_TEXTURE_2D, region.texture);
+				tessellator.startDrawingQuads();
+				renderHelper.drawRectangleInt(tessellator, (chunkX - originX) * tileSize, (chunkZ - originZ) * tileSize, regionSize, regionSize, 0.0f, 0.0f, 1.0f, 1.0f, 0);
+				tessellator.draw();
+			}
 		}
 	}
 
@@ -342,326 +581,568 @@ public class MapRender implements WorldListener {
 			return;
 		}
 
-		List<Waypoint> waypoints = Minimap.instance.worldData.getWaypoints();
-		if (waypoints.size() == 0) {
+		IDimension currentDimension = minimap.worldData.dimension;
+		if (waypointGrid.update(minimap.worldData, currentDimension)) {
+			edgeWaypointsValid = false;
+		}
+		if (waypointGrid.size == 0) {
 			return;
 		}
 
-		Texture waypointTex = minimap.minecraftHelper.getTexture("/assets/minimap/waypoint.png");
-		Texture waypointArrowTex = minimap.minecraftHelper.getTexture("/assets/minimap/waypoint_arrow.png");
+		double rotation = Math.toRadians(playerRotation - 90);
+		waypointSin = Math.sin(rotation);
+		waypointCos = Math.cos(rotation);
+
+		onMapMarkerCount = 0;
+		edgeMarkerCount = 0;
+
+		// Waypoints can only be on the map in these cells, waypoints in all other cells are drawn as arrows on the edge
+		double range = visibleExtent / (double) zoom + 1.0;
+		int cellX0 = MathHelper.floor(playerPosX - range) >> WaypointGrid.CELL_SHIFT;
+		int cellZ0 = MathHelper.floor(playerPosZ - range) >> WaypointGrid.CELL_SHIFT;
+		int cellX1 = MathHelper.floor(playerPosX + range) >> WaypointGrid.CELL_SHIFT;
+		int cellZ1 = MathHelper.floor(playerPosZ + range) >> WaypointGrid.CELL_SHIFT;
+
+		LongObjectMap<List<Waypoint>> cells = waypointGrid.getCells();
+		if ((long) (cellX1 - cellX0 + 1) * (cellZ1 - cellZ0 + 1) <= cells.size()) {
+			for (int cellX = cellX0; cellX <= cellX1; cellX++) {
+				for (int cellZ = cellZ0; cellZ <= cellZ1; cellZ++) {
+					List<Waypoint> cell = waypointGrid.getCell(cellX, cellZ);
+					if (cell != null) {
+						for (int j=0; j < cell.size(); j++) {
+							placeWaypoint(cell.get(j));
+						}
+					}
+				}
+			}
+		} else {
+			// Zoomed out far enough that there are fewer cells with waypoints than visible cells
+			for (int i=0; i < cells.getSlotCount(); i++) {
+				List<Waypoint> cell = cells.getValueAt(i);
+				if (cell == null) {
+					continue;
+				}
+				long key = cells.getKeyAt(i);
+				int cellX = WaypointGrid.getCellX(key);
+				int cellZ = WaypointGrid.getCellZ(key);
+				if (cellX >= cellX0 && cellX <= cellX1 && cellZ >= cellZ0 && cellZ <= cellZ1) {
+					for (int j=0; j < cell.size(); j++) {
+						placeWaypoint(cell.get(j));
+					}
+				}
+			}
+		}
 
-		waypointTex.bind();
-		Texture currentTex = waypointTex;
+		if (!edgeWaypointsValid || cellX0 != edgeCellX0 || cellZ0 != edgeCellZ0 || cellX1 != edgeCellX1 || cellZ1 != edgeCellZ1) {
+			collectEdgeWaypoints(cellX0, cellZ0, cellX1, cellZ1);
+		}
+		for (int i=0; i < edgeWaypoints.size(); i++) {
+			placeEdgeMarker(edgeWaypoints.get(i));
+		}
 
-		IDimension currentDimension = minimap.worldData.dimension;
-		for (int i=0; i < waypoints.size(); i++) {
-			Waypoint waypoint = waypoints.get(i);
-			if (!waypoint.visible || waypoint.dimension != currentDimension) {
+		if (onMapMarkerCount > 0) {
+			minimap.minecraftHelper.getTexture("/assets/minimap/waypoint.png").bind();
+			tessellator.startDrawingQuads();
+			for (int i=0; i < onMapMarkerCount; i++) {
+				WaypointMarker marker = onMapMarkers.get(i);
+				tessellator.setColorOpaque_I(marker.waypoint.color);
+				renderHelper.drawIcon(tessellator, marker.x, marker.y, iconSize, 0.0f, null);
+			}
+			tessellator.draw();
+		}
+
+		if (edgeMarkerCount > 0) {
+			minimap.minecraftHelper.getTexture("/assets/minimap/waypoint_arrow.png").bind();
+			tessellator.startDrawingQuads();
+			for (int i=0; i < edgeMarkerCount; i++) {
+				WaypointMarker marker = edgeMarkers.get(i);
+				tessellator.setColorOpaque_I(marker.waypoint.color);
+				renderHelper.drawRotatedRectangle(tessellator, marker.x - iconSize / 2.0, marker.y - iconSize / 2.0, iconSize, iconSize, 0.0f, 0.0f, 1.0f, 1.0f, 100.0f, marker.sin, marker.cos);
+			}
+			tessellator.draw();
+		}
+
+		if (onMapMarkerCount > 0 && mapConfig.showWaypointLabels.value) {
+			renderWaypointLabels();
+		}
+	}
+
+	/**
+	 * Collect the waypoints of all cells outside of a cell rectangle, bounds are inclusive
+	 */
+	private void collectEdgeWaypoints(int cellX0, int cellZ0, int cellX1, int cellZ1) {
+		edgeWaypoints.clear();
+		LongObjectMap<List<Waypoint>> cells = waypointGrid.getCells();
+		for (int i=0; i < cells.getSlotCount(); i++) {
+			List<Waypoint> cell = cells.getValueAt(i);
+			if (cell == null) {
 				continue;
 			}
+			long key = cells.getKeyAt(i);
+			int cellX = WaypointGrid.getCellX(key);
+			int cellZ = WaypointGrid.getCellZ(key);
+			if (cellX < cellX0 || cellX > cellX1 || cellZ < cellZ0 || cellZ > cellZ1) {
+				edgeWaypoints.addAll(cell);
+			}
+		}
+		edgeCellX0 = cellX0;
+		edgeCellZ0 = cellZ0;
+		edgeCellX1 = cellX1;
+		edgeCellZ1 = cellZ1;
+		edgeWaypointsValid = true;
+	}
 
-			// Casted to int match map exactly
-			double offsetX = (waypoint.x + 0.5) * zoom - (int) (playerPosX * zoom);
-			double offsetZ = (waypoint.z + 0.5) * zoom - (int) (playerPosZ * zoom);
+	/**
+	 * Find where a waypoint in a visible cell is drawn, either on the map or as an arrow on the edge of the map pointing towards it
+	 */
+	private void placeWaypoint(Waypoint waypoint) {
+		// Casted to int match map exactly
+		double offsetX = (waypoint.x + 0.5) * zoom - (int) (playerPosX * zoom);
+		double offsetZ = (waypoint.z + 0.5) * zoom - (int) (playerPosZ * zoom);
 
-			// Used to render waypoints that are outside the visible map, no int cast for very smooth movement
-			double offsetXSmooth = waypoint.x - playerPosX;
-			double offsetZSmooth = waypoint.z - playerPosZ;
+		if (mapConfig.rotateMap.value) {
+			double sin = waypointSin;
+			double cos = waypointCos;
 
-			Double angle = null;
+			double p0xNew = offsetX * sin - offsetZ * cos;
+			double p0yNew = offsetX * cos + offsetZ * sin;
 
-			if (mapConfig.rotateMap.value) {
-				double rot = Math.toRadians(playerRotation - 90);
+			offsetX = p0xNew;
+			offsetZ = p0yNew;
+		}
 
-				double sin = Math.sin(rot);
-				double cos = Math.cos(rot);
+		double x = mapCenterX + offsetX;
+		double y = mapCenterY + offsetZ;
 
-				double p0xNew = offsetX * sin - offsetZ * cos;
-				double p0yNew = offsetX * cos + offsetZ * sin;
+		int border = (int) (mapWidth / 24.0f);
 
-				offsetX = p0xNew;
-				offsetZ = p0yNew;
+		boolean isOnMap;
+		if (roundMap) {
+			double rad = (mapWidth - border) / 2;
+			isOnMap = offsetX * offsetX + offsetZ * offsetZ < rad * rad;
+		} else {
+			isOnMap = x >= mapPosX + border && y >= mapPosY + border && x < mapPosX + mapWidth - border && y < mapPosY + mapHeight - border;
+		}
+		if (isOnMap) {
+			WaypointMarker marker = getMarker(onMapMarkers, onMapMarkerCount++);
+			marker.waypoint = waypoint;
+			marker.x = x;
+			marker.y = y;
+		} else {
+			placeEdgeMarker(waypoint);
+		}
+	}
 
-				p0xNew = offsetXSmooth * sin - offsetZSmooth * cos;
-				p0yNew = offsetXSmooth * cos + offsetZSmooth * sin;
+	/**
+	 * Place an arrow on the edge of the map pointing towards a waypoint that is not on the map
+	 */
+	private void placeEdgeMarker(Waypoint waypoint) {
+		// No int cast for very smooth movement
+		double offsetXSmooth = waypoint.x - playerPosX;
+		double offsetZSmooth = waypoint.z - playerPosZ;
 
-				offsetXSmooth = p0xNew;
-				offsetZSmooth = p0yNew;
-			}
+		if (mapConfig.rotateMap.value) {
+			double sin = waypointSin;
+			double cos = waypointCos;
 
-			double x = mapCenterX + offsetX;
-			double y = mapCenterY + offsetZ;
+			double p0xNew = offsetXSmooth * sin - offsetZSmooth * cos;
+			double p0yNew = offsetXSmooth * cos + offsetZSmooth * sin;
 
-			boolean isOnMap = true;
-			int border = (int) (mapWidth / 24.0f);
+			offsetXSmooth = p0xNew;
+			offsetZSmooth = p0yNew;
+		}
 
-			if (roundMap) {
-				double dx = x - mapCenterX;
-				double dy = y - mapCenterY;
-				double rad = (mapWidth - border) / 2;
-				double rad2 = (mapWidth + iconSize / 2) / 2;
+		double x;
+		double y;
 
-				double distance = Math.sqrt(dx * dx + dy * dy);
-				isOnMap = distance < rad;
+		double distance = Math.sqrt(offsetXSmooth * offsetXSmooth + offsetZSmooth * offsetZSmooth);
+		if (distance == 0.0) {
+			return;
+		}
 
-				if (!isOnMap) {
-					distance = Math.sqrt(offsetXSmooth * offsetXSmooth + offsetZSmooth * offsetZSmooth);
+		if (roundMap) {
+			double rad2 = (mapWidth + iconSize / 2) / 2;
 
-					offsetXSmooth = (offsetXSmooth / distance) * rad2;
-					offsetZSmooth = (offsetZSmooth / distance) * rad2;
+			x = (offsetXSmooth / distance) * rad2 + mapCenterX;
+			y = (offsetZSmooth / distance) * rad2 + mapCenterY;
+		} else {
+			double offXAbs = Math.abs(offsetXSmooth);
+			double offZAbs = Math.abs(offsetZSmooth);
 
-					x = offsetXSmooth + mapCenterX;
-					y = offsetZSmooth + mapCenterY;
-				}
+			if (offZAbs > offXAbs) {
+				x = (offsetXSmooth / offZAbs) * (mapWidth / 2) + mapCenterX;
+				y = (offsetZSmooth / offZAbs) * (mapWidth / 2) + mapCenterY;
 			} else {
-				isOnMap = x >= mapPosX + border && y >= mapPosY + border && x < mapPosX + mapWidth - border && y < mapPosY + mapHeight - border;
-
-				if (!isOnMap) {
-					double offXAbs = Math.abs(offsetXSmooth);
-					double offZAbs = Math.abs(offsetZSmooth);
-
-					if (offZAbs > offXAbs) {
-						x = (offsetXSmooth / offZAbs) * (mapWidth / 2) + mapCenterX;
-						y = (offsetZSmooth / offZAbs) * (mapWidth / 2) + mapCenterY;
-					} else {
-						x = (offsetXSmooth / offXAbs) * (mapWidth / 2) + mapCenterX;
-						y = (offsetZSmooth / offXAbs) * (mapWidth / 2) + mapCenterY;
-					}
-				}
+				x = (offsetXSmooth / offXAbs) * (mapWidth / 2) + mapCenterX;
+				y = (offsetZSmooth / offXAbs) * (mapWidth / 2) + mapCenterY;
 			}
+		}
 
-			float zLevel = 0.0f;
+		WaypointMarker marker = getMarker(edgeMarkers, edgeMarkerCount++);
+		marker.waypoint = waypoint;
+		marker.x = x;
+		marker.y = y;
+		// Sine and cosine of atan2(-offsetZSmooth, offsetXSmooth)
+		marker.sin = -offsetZSmooth / distance;
+		marker.cos = offsetXSmooth / distance;
+	}
 
-			if (isOnMap) {
-				if (currentTex != waypointTex) {
-					waypointTex.bind();
-					currentTex = waypointTex;
-				}
-			} else {
-				angle = Math.atan2(-offsetZSmooth, offsetXSmooth);
-				if (currentTex != waypointArrowTex) {
-					waypointArrowTex.bind();
-					currentTex = waypointArrowTex;
-				}
-				zLevel = 100.0f;
-			}
+	/**
+	 * Draw the backgrounds of all labels in one batch, then the names
+	 */
+	private void renderWaypointLabels() {
+		int size = mapConfig.waypointLabelSize.value;
+
+		for (int i=0; i < onMapMarkerCount; i++) {
+			WaypointMarker marker = onMapMarkers.get(i);
+			marker.labelWidth = renderHelper.getStringWidth(marker.waypoint.name);
+			marker.labelX = (int) (marker.x - (marker.labelWidth * size) / 2);
+			marker.labelY = (int) (marker.y + 14);
+		}
 
-			tessellator.startDrawingQuads();
-			tessellator.setColorOpaque_I(waypoint.color);
-			renderHelper.drawIcon(tessellator, x, y, iconSize, zLevel, angle);
-			tessellator.draw();
+		glDisable(GL_TEXTURE_2D);
+		glColor4f(0.0f, 0.0f, 0.0f, 0.5f);
+		tessellator.startDrawingQuads();
+		for (int i=0; i < onMapMarkerCount; i++) {
+			WaypointMarker marker = onMapMarkers.get(i);
+			renderHelper.drawRectangle(tessellator, marker.labelX - size, marker.labelY - size, (marker.labelWidth + 2) * size, 10 * size, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f);
+		}
+		tessellator.draw();
+		glEnable(GL_TEXTURE_2D);
 
-			if (isOnMap && mapConfig.showWaypointLabels.value) {
-				int size = mapConfig.waypointLabelSize.value;
+		for (int i=0; i < onMapMarkerCount; i++) {
+			WaypointMarker marker = onMapMarkers.get(i);
 
-				int w = renderHelper.getStringWidth(waypoint.name);
-				int x1 = (int) (x - (w * size) / 2);
-				int y1 = (int) (y + 14);
+			glPushMatrix();
+			glTranslatef(marker.labelX, marker.labelY, 0.0f);
+			glScalef(size, size, size);
+			renderHelper.drawString(marker.waypoint.name, 0, 0, 0xFFFFFFFF, false);
+			glPopMatrix();
+		}
+	}
 
-				glPushMatrix();
-				glTranslatef(x1, y1, 0.0f);
-				glScalef(size, size, size);
+	private static WaypointMarker getMarker(List<WaypointMarker> markers, int index) {
+		if (index == markers.size()) {
+			markers.add(new WaypointMarker());
+		}
+		return markers.get(index);
+	}
 
-				x1 = 0;
-				y1 = 0;
+	/**
+	 * Screen position of a waypoint in the current frame
+	 */
+	private static class WaypointMarker {
 
-				glDisable(GL_TEXTURE_2D);
-				glColor4f(0.0f, 0.0f, 0.0f, 0.5f);
-				tessellator.startDrawingQuads();
-				renderHelper.drawRectangle(tessellator, x1 - 1, y1 - 1, w + 2, 10, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f);
-				tessellator.draw();
+		public Waypoint waypoint;
+		public double x;
+		public double y;
 
-				glEnable(GL_TEXTURE_2D);
-				renderHelper.drawString(waypoint.name, x1, y1, 0xFFFFFFFF, false);
-				currentTex = null;
+		/**
+		 * Direction of edge arrows
+		 */
+		public double sin;
+		public double cos;
+
+		public int labelX;
+		public int labelY;
+		public int labelWidth;
 
-				glPopMatrix();
+	}
+
+	public void setChunkNotInUse(MapChunk chunk) {
+		if (chunk.job != null) {
+			chunk.job.cancel();
+			chunk.job = null;
+		}
+		if (chunk.hasTile) {
+			freeTile(chunk);
+		}
+		chunks.remove(chunk.getKey());
+		renderChunksUnused.push(chunk);
+	}
+
+	/**
+	 * Give a chunk a tile in its region at its level of detail. If a new region texture would not fit into the
+	 * tile memory limit, regions outside of the view are deleted until it does.
+	 *
+	 * @return false if there is no memory left for the tile
+	 */
+	private boolean allocateTile(MapChunk chunk) {
+		int chunkX = chunk.getPosX();
+		int chunkZ = chunk.getPosZ();
+		while (!regionCompositor.canAddTile(chunkX, chunkZ, chunk.lod)) {
+			if (!evictRegion()) {
+				return false;
 			}
 		}
+		regionCompositor.addTile(chunkX, chunkZ, chunk.lod);
+		chunk.hasTile = true;
+		return true;
 	}
 
-	public void setChunkNotInUse(MapChunk chunk) {
-		if (chunk.tile != -1) {
-			mapTileManager.setTileNotInUse(chunk.tile);
-			chunk.tile = -1;
+	/**
+	 * Delete the region that has been outside of the view the longest. Its chunks lose their tiles and are
+	 * rendered again if they come back into view. A job still running for one of them is dropped when it finishes.
+	 *
+	 * @return false if every region is in view
+	 */
+	private boolean evictRegion() {
+		MapRegion region = regionCompositor.evictRegion();
+		if (region == null) {
+			return false;
+		}
+		long present = region.presentChunks;
+		while (present != 0L) {
+			int index = Long.numberOfTrailingZeros(present);
+			present &= present - 1;
+
+			int chunkX = (region.regionX << MapRegion.SHIFT) + (index & (MapRegion.SIZE - 1));
+			int chunkZ = (region.regionZ << MapRegion.SHIFT) + (index >> MapRegion.SHIFT);
+			MapChunk chunk = chunks.get(getChunkKey(chunkX, chunkZ));
+			if (chunk != null) {
+				chunk.hasTile = false;
+				chunk.hasPixels = false;
+				chunk.needsUpdate = true;
+			}
 		}
-		chunks.remove(chunk.getIndex());
-		renderChunksUnused.add(chunk);
+		return true;
 	}
 
-	private void renderTile(Tessellator tessellator, int tile, int x, int y, int width, int height, int zLevel) {
-		int tileX = tile % 64;
-		int tileY = tile / 64;
+	/**
+	 * Free the tile of a chunk and remove it from its region
+	 */
+	private void freeTile(MapChunk chunk) {
+		regionCompositor.removeTile(chunk.getPosX(), chunk.getPosZ(), chunk.lod);
+		chunk.hasTile = false;
+	}
 
-		float w = 1.0f / 64.0f;
+	/**
+	 * Render the chunks in the update queue, closest to the predicted player position first, until the frame budget is used up
+	 */
+	private void updateChunks() {
+		ChunkUpdateQueue queue = chunkUpdateQueue;
 
-		float u0 = tileX / 64.0f;
-		float v0 = tileY / 64.0f;
+		while (!queue.isEmpty()) {
+			long key = queue.peek();
+			int chunkX = getChunkX(key);
+			int chunkZ = getChunkZ(key);
 
-		float u1 = u0 + w;
-		float v1 = v0 + w;
+			if (!queue.isInView(chunkX, chunkZ)) {
+				queue.poll();
+				continue;
+			}
 
-		renderHelper.drawRectangleInt(tessellator, x, y, width, height, u0, v0, u1, v1, zLevel);
-	}
+			int x0 = chunkX << 4;
+			int z0 = chunkZ << 4;
 
-	private void updateChunks() {
-		int updates = 0;
-		int max = minimap.config.updateSpeed.value;
+			MapChunk chunk = chunks.get(key);
+			if (chunk != null && ((!chunk.needsUpdate && ColumnMask.isEmpty(chunk.dirtyColumns)) || chunk.job != null)) {
+				// Up to date, or queued again once its job has finished
+				queue.poll();
+				continue;
+			}
 
-		for (int i = -viewRadius; i <= viewRadius; i++) {
-			for (int j = -viewRadius; j <= viewRadius; j++) {
-				int chunkX = playerChunkX + i;
-				int chunkZ = playerChunkZ + j;
-				int index = getChunkIndex(chunkX, chunkZ);
+			if (!world.areBlocksLoaded(x0 - 8, 0, z0 - 8, x0 + 24, 0, z0 + 24)) {
+				queue.poll();
+				queue.defer(key);
+				continue;
+			}
 
-				int x0 = chunkX << 4;
-				int z0 = chunkZ << 4;
+			if (chunk == null) {
+				chunk = getNewMapChunk(chunkX, chunkZ);
+				chunk.needsUpdate = true;
+				chunks.put(chunk.getKey(), chunk);
+				renderChunksUsed.add(chunk);
+			}
 
-				MapChunk chunk = chunks.get(index);
-				if (chunk != null && !chunk.needsUpdate) {
-					continue;
+			if (!chunk.hasTile) {
+				chunk.lod = getLod(Math.max(Math.abs(playerChunkX - chunkX), Math.abs(playerChunkZ - chunkZ)));
+				if (!allocateTile(chunk)) {
+					return;
 				}
+			}
 
-				if (!world.areBlocksLoaded(x0 - 8, 0, z0 - 8, x0 + 24, 0, z0 + 24)) {
-					continue;
-				}
+			// Only shade the changed columns if the rest of the tile is still valid
+			if (chunk.needsUpdate || !chunk.hasPixels) {
+				dirtyBounds[0] = 0;
+				dirtyBounds[1] = 0;
+				dirtyBounds[2] = 15;
+				dirtyBounds[3] = 15;
+			} else {
+				ColumnMask.getBounds(chunk.dirtyColumns, dirtyBounds);
+			}
 
-				if (chunk == null) {
-					chunk = getNewMapChunk(chunkX, chunkZ);
-					chunks.put(chunk.getIndex(), chunk);
-					renderChunksUsed.add(chunk);
-				}
+			// Level of detail tiles only scan and shade one column of every block
+			int columns = Math.max(1, (dirtyBounds[2] - dirtyBounds[0] + 1) * (dirtyBounds[3] - dirtyBounds[1] + 1) >> (chunk.lod * 2));
+			if (!tileScheduler.canAfford(columns)) {
+				return;
+			}
+			long start = System.nanoTime();
 
-				int tile = chunk.tile;
-				if (tile == -1) {
-					tile = mapTileManager.getEmptyTile();
-					if (tile == -1) {
-						return;
-					}
-					chunk.tile = tile;
+			if (tilePipeline.isEnabled()) {
+				if (!tilePipeline.canSubmit()) {
+					return;
 				}
-
+				TileJob job = tilePipeline.obtainJob();
+				mapTileRenderer.snapshot(job.snapshot, chunkX, chunkZ, chunk.lod, dirtyBounds[0], dirtyBounds[1], dirtyBounds[2], dirtyBounds[3]);
+				job.chunk = chunk;
+				if (!tilePipeline.submit(job)) {
+					// The released job is only reused by this thread, so its snapshot is still intact
+					onTileScanned(job.snapshot, false);
+					return;
+				}
+				queue.poll();
+				chunk.job = job;
+				chunk.needsUpdate = false;
+				ColumnMask.clear(chunk.dirtyColumns);
+			} else {
+				queue.poll();
 				chunk.needsUpdate = false;
+				ColumnMask.clear(chunk.dirtyColumns);
 
-				boolean rendered = mapTileRenderer.render(colorBufferInt, chunkX, chunkZ, 16, 16);
-				if (rendered) {
-					colorBuffer.position(0);
-					mapTileManager.setTile(tile, colorBuffer);
-					// Persist hash-based tile for later viewing (force no-light only)
-					try {
-						int[] argbNoLight = new int[16 * 16];
-						java.nio.ByteBuffer bytes = colorBuffer.duplicate();
-						bytes.position(0);
-						for (int y = 0; y < 16; y++) {
-							for (int x = 0; x < 16; x++) {
-								int r = bytes.get() & 0xFF;
-								int g = bytes.get() & 0xFF;
-								int b = bytes.get() & 0xFF;
-								int a = bytes.get() & 0xFF;
-								// store unlit: copy RGB, keep alpha
-								argbNoLight[y * 16 + x] = (a << 24) | (r << 16) | (g << 8) | b;
-							}
-						}
-						b100.minimap.data.ChunkStorage storage = Minimap.instance.worldData.getChunkStorage();
-						String hashNL = storage.computeHashARGB(argbNoLight);
-						storage.saveTileARGB(hashNL, argbNoLight);
-						storage.saveChunkHash(chunkX, chunkZ, hashNL);
-					} catch (Throwable ignore) {}
+				mapTileRenderer.snapshot(snapshot, chunkX, chunkZ, chunk.lod, dirtyBounds[0], dirtyBounds[1], dirtyBounds[2], dirtyBounds[3]);
+				mapTileRenderer.render(snapshot, pixelBuffer);
+				onTileScanned(snapshot, true);
+				onTileRendered(chunk, snapshot, pixels);
+			}
+
+			tileScheduler.onTileDone(columns, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Upload tiles that have been shaded by the tile render threads
+	 */
+	private void processFinishedTiles() {
+		TileJob job;
+		while ((job = tilePipeline.pollFinished()) != null) {
+			onTileScanned(job.snapshot, !job.cancelled && !job.failed);
+
+			MapChunk chunk = job.chunk;
+			if (chunk != null && chunk.job == job) {
+				chunk.job = null;
+				if (job.cancelled || job.failed || !chunk.hasTile) {
+					chunk.needsUpdate = true;
 				} else {
-					// Try to load from saved disk cache and upload to tile
-					if (!loadSavedHashTile(chunkX, chunkZ, tile)) {
-						mapTileManager.setTileNotInUse(chunk.tile);
-						chunk.tile = -1;
-					}
+					onTileRendered(chunk, job.snapshot, job.pixels);
 				}
-
-				updates++;
-				if (updates >= max) {
-					return;
+				// Changes made while the job was running
+				if (chunk.needsUpdate || !ColumnMask.isEmpty(chunk.dirtyColumns)) {
+					chunkUpdateQueue.add(chunk.getPosX(), chunk.getPosZ());
 				}
 			}
+			tilePipeline.releaseJob(job);
 		}
 	}
 
-	private void saveChunkHashTile(int chunkX, int chunkZ, IntBuffer rgbaBuffer) {
-		try {
-			// Convert current tile to ARGB int[] (daylight-applied already by renderer if enabled)
-			int[] argb = new int[16 * 16];
-			// RGBA bytes in colorBuffer -> ARGB int
-			ByteBuffer bytes = colorBuffer.duplicate();
-			bytes.position(0);
-			for (int y = 0; y < 16; y++) {
-				for (int x = 0; x < 16; x++) {
-					int r = bytes.get() & 0xFF;
-					int g = bytes.get() & 0xFF;
-					int b = bytes.get() & 0xFF;
-					int a = bytes.get() & 0xFF;
-					argb[y * 16 + x] = (a << 24) | (r << 16) | (g << 8) | b;
-				}
+	/**
+	 * Store the columns scanned for a tile, and shade the tiles again that were shaded from outdated columns
+	 */
+	private void onTileScanned(TileSnapshot snapshot, boolean rendered) {
+		int chunkX = snapshot.posX;
+		int chunkZ = snapshot.posZ;
+
+		if (mapTileRenderer.onTileScanned(snapshot, rendered)) {
+			// The border pixels of the neighbours, the right and bottom ones also read the upper left corner
+			int x0 = chunkX << 4;
+			int z0 = chunkZ << 4;
+			markPixelsDirty(x0 - 1, z0, x0 - 1, z0 + 15);
+			markPixelsDirty(x0 + 16, z0, x0 + 16, z0 + 16);
+			markPixelsDirty(x0, z0 - 1, x0 + 15, z0 - 1);
+			markPixelsDirty(x0, z0 + 16, x0 + 16, z0 + 16);
+		}
+
+		MapChunk chunk = chunks.get(getChunkKey(chunkX, chunkZ));
+		if (rendered && chunk != null && !ColumnMask.isEmpty(snapshot.missingTints)) {
+			ColumnMask.add(chunk.dirtyColumns, snapshot.missingTints);
+			chunkUpdateQueue.add(chunkX, chunkZ);
+		}
+	}
+
+	/**
+	 * Copy the shaded rectangle of a snapshot into the chunk, then upload and save the tile
+	 */
+	private void onTileRendered(MapChunk chunk, TileSnapshot snapshot, int[] shadedPixels) {
+		int chunkX = chunk.getPosX();
+		int chunkZ = chunk.getPosZ();
+
+		int x0 = snapshot.x0;
+		int z0 = snapshot.z0;
+		int width = snapshot.x1 - snapshot.x0 + 1;
+		int height = snapshot.z1 - snapshot.z0 + 1;
+
+		TilePixels.copyRect(shadedPixels, chunk.pixels, 16, x0, z0, width, height);
+
+		if (snapshot.rendered) {
+			chunk.hasPixels = true;
+			chunk.pixelsLod = width == 16 && height == 16 ? snapshot.lod : Math.max(chunk.pixelsLod, snapshot.lod);
+
+			// Only the shaded rectangle changed, a single block update uploads just its columns
+			regionCompositor.markTile(chunkX, chunkZ, chunk.lod, chunk.pixels, x0, z0, width, height);
+			if (chunk.pixelsLod == 0) {
+				// Save the tile for the map viewer, written on the tile writer thread. Sampled tiles would replace full resolution ones.
+				minimap.tileWriteQueue.add(minimap.worldData.getChunkStorage(), chunkX, chunkZ, chunk.pixels);
 			}
-			b100.minimap.data.ChunkStorage storage = Minimap.instance.worldData.getChunkStorage();
-			String hashLit = storage.computeHashARGB(argb);
-			storage.saveTileARGB(hashLit, argb);
-			storage.saveChunkHash(chunkX, chunkZ, hashLit);
-
-			// Save no-light variant (force brightness = 1) for daylight view
-			int[] argbNoLight = new int[argb.length];
-			for (int i=0;i<argb.length;i++) {
-				int v = argb[i];
-				int a = (v >>> 24) & 0xFF;
-				int r = (v >>> 16) & 0xFF;
-				int g = (v >>> 8) & 0xFF;
-				int b = (v) & 0xFF;
-				// remove multiplicative lighting by normalizing alpha only
-				argbNoLight[i] = (a << 24) | (r << 16) | (g << 8) | b;
-			}
-			String hashNL = storage.computeHashARGB(argbNoLight);
-			storage.saveTileARGB(hashNL, argbNoLight);
-			storage.saveChunkHash(chunkX, chunkZ, hashNL);
-		} catch (Throwable t) {}
-	}
-
-	private boolean loadSavedHashTile(int chunkX, int chunkZ, int tile) {
+			if (chunk.pixelsLod > chunk.lod) {
+				// The chunk came closer while its tile was rendered
+				chunk.needsUpdate = true;
+			}
+		} else {
+			chunk.hasPixels = false;
+			// Try to load from saved disk cache and upload to tile
+			if (!loadSavedHashTile(chunk)) {
+				freeTile(chunk);
+			}
+		}
+	}
+
+	private boolean loadSavedHashTile(MapChunk chunk) {
 		try {
-			b100.minimap.data.ChunkStorage storage = Minimap.instance.worldData.getChunkStorage();
-			String hash = storage.loadChunkHash(chunkX, chunkZ);
-			if (hash == null) return false;
-			int[] argb = storage.loadTileARGB(hash);
+			int[] argb = Minimap.instance.worldData.getChunkStorage().loadChunkTile(chunk.getPosX(), chunk.getPosZ());
 			if (argb == null || argb.length != 16 * 16) return false;
-			for (int y = 0; y < 16; y++) {
-				for (int x = 0; x < 16; x++) {
-					int v = argb[y * 16 + x];
-					byte a = (byte)((v >> 24) & 0xFF);
-					byte r = (byte)((v >> 16) & 0xFF);
-					byte g = (byte)((v >> 8) & 0xFF);
-					byte b = (byte)(v & 0xFF);
-					int idx = (y * 16 + x) * 4;
-					colorBuffer.put(idx + 0, r);
-					colorBuffer.put(idx + 1, g);
-					colorBuffer.put(idx + 2, b);
-					colorBuffer.put(idx + 3, a);
-				}
-			}
-			colorBuffer.position(0);
-			mapTileManager.setTile(tile, colorBuffer);
+			System.arraycopy(argb, 0, chunk.pixels, 0, argb.length);
+			regionCompositor.markTile(chunk.getPosX(), chunk.getPosZ(), chunk.lod, chunk.pixels);
 			return true;
 		} catch (Throwable t) {
 			return false;
 		}
 	}
 
-	public static int getChunkIndex(int posX, int posZ) {
-		return (posZ & 0xFFFF) << 16 | (posX & 0xFFFF);
+	public static long getChunkKey(int posX, int posZ) {
+		return ((long) posX << 32) | (posZ & 0xFFFFFFFFL);
+	}
+
+	public static int getChunkX(long key) {
+		return (int) (key >> 32);
+	}
+
+	public static int getChunkZ(long key) {
+		return (int) key;
+	}
+
+	/**
+	 * Remove a chunk from the used chunks by moving the last one into its place
+	 */
+	private MapChunk removeUsedChunk(int i) {
+		int last = renderChunksUsed.size() - 1;
+		MapChunk chunk = renderChunksUsed.get(i);
+		renderChunksUsed.set(i, renderChunksUsed.get(last));
+		renderChunksUsed.remove(last);
+		return chunk;
 	}
 
 	private MapChunk getNewMapChunk(int posX, int posZ) {
-		if (renderChunksUnused.size() > 0) {
-			return renderChunksUnused.remove(0).setPosition(posX, posZ);
+		MapChunk chunk = renderChunksUnused.poll();
+		if (chunk != null) {
+			return chunk.setPosition(posX, posZ);
 		}
 		return new MapChunk().setPosition(posX, posZ);
 	}
 
-	public void updateBlocks(int x0, int y0, int z0, int x1, int y1, int z1) {
+	/**
+	 * Mark the pixels of all tiles inside a block rectangle to be rendered again, bounds are inclusive
+	 */
+	private void markPixelsDirty(int x0, int z0, int x1, int z1) {
 		int chunkX0 = x0 >> 4;
 		int chunkZ0 = z0 >> 4;
 		int chunkX1 = x1 >> 4;
@@ -669,36 +1150,77 @@ public class MapRender implements WorldListener {
 
 		for (int chunkX = chunkX0; chunkX <= chunkX1; chunkX++) {
 			for (int chunkZ = chunkZ0; chunkZ <= chunkZ1; chunkZ++) {
-				int index = getChunkIndex(chunkX, chunkZ);
-
-				MapChunk chunk = chunks.get(index);
+				MapChunk chunk = chunks.get(getChunkKey(chunkX, chunkZ));
 
 				if (chunk != null) {
-					chunk.needsUpdate = true;
+					ColumnMask.setRect(chunk.dirtyColumns, x0 - (chunkX << 4), z0 - (chunkZ << 4), x1 - (chunkX << 4), z1 - (chunkZ << 4));
+					chunkUpdateQueue.add(chunkX, chunkZ);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Shade all tiles again from the cached column summaries, for settings that only affect shading
+	 */
 	public void updateAllTiles() {
 		for (int i=0; i < renderChunksUsed.size(); i++) {
-			renderChunksUsed.get(i).needsUpdate = true;
+			MapChunk chunk = renderChunksUsed.get(i);
+			chunk.needsUpdate = true;
+			chunkUpdateQueue.add(chunk.getPosX(), chunk.getPosZ());
 		}
 	}
 
-	@Override
-	public void onUpdateBlock(int x, int y, int z) {
-		updateBlocks(x-1, y-1, z-1, x+1, y+1, z+1);
+	/**
+	 * Scan the world again for all tiles, for settings that affect which blocks or tints are visible
+	 */
+	public void rescanAllTiles() {
+		mapTileRenderer.summaryCache.invalidateAll();
+		updateAllTiles();
 	}
 
 	@Override
-	public void onUpdateBlocks(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
-		updateBlocks(minX-1, minY-1, minZ-1, maxX+1, maxY+1, maxZ+1);
+	public void onUpdateAllChunks() {
+		rescanAllTiles();
 	}
 
 	@Override
-	public void onUpdateAllChunks() {
-		updateAllTiles();
+	public void onUpdateChunkColumns(int chunkX, int chunkZ, long[] columns) {
+		mapTileRenderer.summaryCache.markDirty(chunkX, chunkZ, columns);
+
+		MapChunk chunk = chunks.get(getChunkKey(chunkX, chunkZ));
+		if (chunk != null) {
+			ColumnMask.dilate(columns, dilatedColumns);
+			ColumnMask.add(chunk.dirtyColumns, dilatedColumns);
+		}
+
+		// A chunk that was just loaded may be what its neighbours were waiting for
+		for (int i = -1; i <= 1; i++) {
+			for (int j = -1; j <= 1; j++) {
+				if (chunks.get(getChunkKey(chunkX + i, chunkZ + j)) == null) {
+					chunkUpdateQueue.add(chunkX + i, chunkZ + j);
+				}
+			}
+		}
+		if (chunk != null) {
+			chunkUpdateQueue.add(chunkX, chunkZ);
+		}
+
+		// Columns on the edge of the chunk also affect the pixels of the neighbouring tiles
+		for (int z = 0; z < 16; z++) {
+			int row = ColumnMask.getRow(columns, z);
+			if (z != 0 && z != 15) {
+				row &= 0x8001;
+			}
+			while (row != 0) {
+				int x = Integer.numberOfTrailingZeros(row);
+				row &= row - 1;
+
+				int blockX = (chunkX << 4) + x;
+				int blockZ = (chunkZ << 4) + z;
+				markPixelsDirty(blockX - 1, blockZ - 1, blockX + 1, blockZ + 1);
+			}
+		}
 	}
 
 	public void onWorldChange(World world) {
@@ -710,8 +1232,16 @@ public class MapRender implements WorldListener {
 		} catch (Throwable ignore) {}
 
 		while(renderChunksUsed.size() > 0) {
-			setChunkNotInUse(renderChunksUsed.remove(0));
+			setChunkNotInUse(renderChunksUsed.remove(renderChunksUsed.size() - 1));
+		}
+		chunkUpdateQueue.clear();
+		// Changes collected in the old world must not mark chunks of the new one
+		BlockUpdateBuffer updateBuffer = minimap.minecraftHelper.getBlockUpdateBuffer();
+		if (updateBuffer != null) {
+			updateBuffer.clear();
 		}
+		regionCompositor.clear();
+		tileQuadCache.invalidate();
 		// Force full refresh so first frames don't use stale tiles
 		updateAllTiles();
 	}
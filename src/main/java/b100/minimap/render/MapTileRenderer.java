@@ -1,41 +1,227 @@
 package b100.minimap.render;
 
-import static b100.minimap.utils.Utils.*;
-
 import java.nio.IntBuffer;
 
 import b100.minimap.Minimap;
 import b100.minimap.render.block.BlockRenderManager;
 import b100.minimap.render.block.RenderType;
 import b100.minimap.render.block.TileColors;
+import b100.minimap.utils.ColorUtils;
 import b100.minimap.utils.Utils;
 import net.minecraft.client.render.block.color.BlockColorDispatcher;
 import net.minecraft.core.block.Block;
 import net.minecraft.core.block.Blocks;
 import net.minecraft.core.world.World;
+import net.minecraft.core.world.chunk.Chunk;
 
 public class MapTileRenderer {
 
+	/**
+	 * Number of chunk column summaries kept in memory
+	 */
+	public static final int SUMMARY_CACHE_SIZE = 2048;
+
+	/**
+	 * Columns scanned for each level of detail, see {@link #getSampleOffset(int)}
+	 */
+	private static final long[][] SAMPLE_COLUMNS = new long[MapRender.LOD_LEVELS][];
+
+	/**
+	 * Columns that the border of a neighbouring tile of any level of detail is shaded from
+	 */
+	private static final long[] BORDER_COLUMNS = ColumnMask.create();
+
+	static {
+		for(int lod=0; lod < MapRender.LOD_LEVELS; lod++) {
+			int step = 1 << lod;
+			int offset = getSampleOffset(lod);
+			SAMPLE_COLUMNS[lod] = ColumnMask.create();
+			ColumnMask.setSamples(SAMPLE_COLUMNS[lod], step, offset);
+
+			ColumnMask.setRect(BORDER_COLUMNS, offset, 0, offset, 15);
+			ColumnMask.setRect(BORDER_COLUMNS, 16 - step + offset, 0, 16 - step + offset, 15);
+			ColumnMask.setRect(BORDER_COLUMNS, 0, offset, 15, offset);
+			ColumnMask.setRect(BORDER_COLUMNS, 0, 16 - step + offset, 15, 16 - step + offset);
+		}
+	}
+
+	private static final int BRIGHTNESS_SHADOW = ColorUtils.toFixed(0.75f);
+	private static final int BRIGHTNESS_SLOPE_BRIGHT = ColorUtils.toFixed(1.25f);
+	private static final int BRIGHTNESS_SLOPE_DARK = ColorUtils.toFixed(0.65f);
+
 	public Minimap minimap;
 
 	public World world;
 	public int worldHeight = 256;
 
-	private int[] maxHeightCache = new int[18 * 18];
-	private int[] minHeightCache = new int[18 * 18];
+	public final ColumnSummaryCache summaryCache = new ColumnSummaryCache(SUMMARY_CACHE_SIZE);
 
 	public MapTileRenderer(Minimap minimap) {
 		this.minimap = minimap;
 	}
 
-	public boolean render(IntBuffer colorBuffer, int posX, int posZ, int width, int height) {
-		boolean rendered = false;
+	/**
+	 * Level of detail tiles are sampled from one column of every (1 << lod) * (1 << lod) block of columns
+	 *
+	 * @return the position of the sampled column in the block
+	 */
+	public static int getSampleOffset(int lod) {
+		return (1 << lod) >> 1;
+	}
+
+	public void snapshot(TileSnapshot snapshot, int posX, int posZ) {
+		snapshot(snapshot, posX, posZ, 0, 0, 0, 15, 15);
+	}
 
+	/**
+	 * Copy what is needed to render a rectangle of a tile. If columns of the chunk have changed since they
+	 * were scanned, the blocks and light of the chunk are copied so they can be scanned again by
+	 * {@link #render(TileSnapshot, IntBuffer)}. Must be called on the client thread.
+	 * <p>
+	 * For a level of detail tile only the sampled columns are scanned, and the rectangle is grown to whole
+	 * blocks of sampled columns.
+	 */
+	public void snapshot(TileSnapshot snapshot, int posX, int posZ, int lod, int x0, int z0, int x1, int z1) {
 		if(world == null) {
 			throw new NullPointerException();
 		}
+		initTileColors();
+
+		ColumnSummary summary = summaryCache.get(posX, posZ);
+		if(summary == null) {
+			summary = summaryCache.create(posX, posZ);
+			ColumnMask.setAll(summary.dirtyColumns);
+		}
+		summary.copyTo(snapshot.summary);
+
+		// The snapshot takes over the dirty columns it scans, changes made while it is rendered mark them again
+		ColumnMask.clear(snapshot.summary.dirtyColumns);
+		ColumnMask.add(snapshot.summary.dirtyColumns, summary.dirtyColumns);
+		ColumnMask.retain(snapshot.summary.dirtyColumns, SAMPLE_COLUMNS[lod]);
+		ColumnMask.remove(summary.dirtyColumns, snapshot.summary.dirtyColumns);
+		snapshot.summaryGeneration = summaryCache.getGeneration();
+
+		snapshot.posX = posX;
+		snapshot.posZ = posZ;
+		snapshot.lod = lod;
+		int blockMask = (1 << lod) - 1;
+		snapshot.x0 = x0 & ~blockMask;
+		snapshot.z0 = z0 & ~blockMask;
+		snapshot.x1 = x1 | blockMask;
+		snapshot.z1 = z1 | blockMask;
+		snapshot.shadeType = minimap.config.mapConfig.shadeType.value;
+		snapshot.lighting = minimap.config.mapConfig.lighting.value;
+		snapshot.renderAllBlocks = minimap.config.mapConfig.renderAllBlocks.value;
+		snapshot.rendered = false;
+		ColumnMask.clear(snapshot.missingTints);
+
+		snapshot.chunk.worldHeight = worldHeight;
+		if(ColumnMask.isEmpty(snapshot.summary.dirtyColumns)) {
+			snapshot.chunk.clear();
+		}else {
+			Chunk chunk = world.getChunkFromChunkCoords(posX, posZ);
+			snapshot.chunk.copy(chunk);
+			if(chunk != null) {
+				snapshotTints(snapshot, chunk);
+			}
+
+			float[] brightnessRamp = world.worldType.getBrightnessRamp();
+			for(int i=0; i < snapshot.brightness.length; i++) {
+				snapshot.brightness[i] = ColorUtils.toFixed(brightnessRamp[i]);
+			}
+			snapshot.skyDarken = world.skyDarken;
+		}
+
+		// Shading only looks at the direct neighbours and the upper left corner, so the other corners are never read.
+		// The border is the nearest sampled column of the neighbouring chunks.
+		int[] maxHeightCache = snapshot.maxHeight;
+		int samples = 16 >> lod;
+		int offset = getSampleOffset(lod);
+		int last = 16 - (1 << lod) + offset;
+		for(int k=0; k < samples; k++) {
+			int c = (k << lod) + offset;
+			setHeight(maxHeightCache, 0, k + 1, getBorderHeight(posX - 1, posZ, last, c));
+			setHeight(maxHeightCache, samples + 1, k + 1, getBorderHeight(posX + 1, posZ, offset, c));
+			setHeight(maxHeightCache, k + 1, 0, getBorderHeight(posX, posZ - 1, c, last));
+			setHeight(maxHeightCache, k + 1, samples + 1, getBorderHeight(posX, posZ + 1, c, offset));
+		}
+		setHeight(maxHeightCache, 0, 0, getBorderHeight(posX - 1, posZ - 1, last, last));
+		setHeight(maxHeightCache, samples + 1, 0, -1);
+		setHeight(maxHeightCache, 0, samples + 1, -1);
+		setHeight(maxHeightCache, samples + 1, samples + 1, -1);
+	}
+
+	/**
+	 * Height of a column of a neighbouring chunk. If the chunk has not been scanned yet the heightmap is used,
+	 * which misses blocks that don't block light. The border is shaded again once the chunk has been scanned,
+	 * see {@link #onTileScanned(TileSnapshot, boolean)}.
+	 */
+	private int getBorderHeight(int chunkX, int chunkZ, int i, int j) {
+		ColumnSummary summary = summaryCache.get(chunkX, chunkZ);
+		if(summary != null && ColumnMask.isSet(summary.scannedColumns, i, j)) {
+			return summary.topY[j * 16 + i];
+		}
+		return world.getHeightValue((chunkX << 4) + i, (chunkZ << 4) + j) - 1;
+	}
+
+	/**
+	 * Look up the tints of the dirty columns of a snapshot, see {@link TileSnapshot#tintBlocks}
+	 */
+	private void snapshotTints(TileSnapshot snapshot, Chunk chunk) {
+		ColumnSummary summary = snapshot.summary;
+		short[] tintBlocks = snapshot.tintBlocks;
+
+		for(int j=0; j < 16; j++) {
+			for(int i=0; i < 16; i++) {
+				int column = j * 16 + i;
+				int base = column * TileSnapshot.TINT_CANDIDATES;
+				for(int k=0; k < TileSnapshot.TINT_CANDIDATES; k++) {
+					tintBlocks[base + k] = 0;
+				}
+				if(!ColumnMask.isSet(summary.dirtyColumns, i, j)) {
+					continue;
+				}
+
+				int x = (snapshot.posX << 4) + i;
+				int z = (snapshot.posZ << 4) + j;
 
-		BlockRenderManager blockColors = minimap.blockRenderManager;
+				// A block change rarely changes which blocks are on top of a column
+				if(ColumnMask.isSet(summary.scannedColumns, i, j)) {
+					if(summary.opaqueY[column] != -1) {
+						addTint(snapshot, base, summary.opaqueBlock[column], x, summary.opaqueY[column], z);
+					}
+					if(summary.transparentDepth[column] != 0) {
+						addTint(snapshot, base, summary.transparentBlock[column], x, summary.topY[column], z);
+					}
+				}
+
+				int y = chunk.getHeightValue(i, j) - 1;
+				if(y >= 0) {
+					addTint(snapshot, base, snapshot.chunk.getBlockId(i, y, j), x, y, z);
+				}
+			}
+		}
+	}
+
+	private void addTint(TileSnapshot snapshot, int base, int id, int x, int y, int z) {
+		Block block = id > 0 ? Blocks.getBlock(id) : null;
+		if(block == null) {
+			return;
+		}
+		for(int k=0; k < TileSnapshot.TINT_CANDIDATES; k++) {
+			int candidate = snapshot.tintBlocks[base + k];
+			if(candidate == id) {
+				return;
+			}
+			if(candidate == 0) {
+				snapshot.tintBlocks[base + k] = (short) id;
+				snapshot.tints[base + k] = BlockColorDispatcher.getInstance().getDispatch(block).getWorldColor(world, x, y, z);
+				return;
+			}
+		}
+	}
+
+	private void initTileColors() {
 		TileColors tileColors = minimap.tileColors;
 		// Ensure tile colors are initialized (atlas may not be ready on first frames)
 		try {
@@ -43,93 +229,248 @@ public class MapTileRenderer {
 				// If palette is empty for BTA impl, attempt one-time init
 				if (tileColors instanceof b100.minimap.mc.impl.TileColorsBTA) {
 					b100.minimap.mc.impl.TileColorsBTA bta = (b100.minimap.mc.impl.TileColorsBTA) tileColors;
-					if (bta.mapColors != null && bta.mapColors.isEmpty()) {
+					if (!bta.hasColors()) {
 						bta.createTileColors();
 					}
 				}
 			}
 		} catch (Throwable ignore) {}
+	}
 
-		final int worldHeight = 256;
+	/**
+	 * Scan the dirty columns of a snapshot and shade its rectangle, other pixels are not written.
+	 * Does not access the world and can be called from any thread.
+	 */
+	public void render(TileSnapshot snapshot, IntBuffer colorBuffer) {
+		ColumnSummary summary = snapshot.summary;
+		if(!ColumnMask.isEmpty(summary.dirtyColumns)) {
+			scanColumns(snapshot, minimap.blockRenderManager.renderTypes);
+		}
+		snapshot.rendered = summary.hasVisibleBlocks;
+
+		int lod = snapshot.lod;
+		int samples = 16 >> lod;
+		int offset = getSampleOffset(lod);
+		for(int j=0; j < samples; j++) {
+			for(int i=0; i < samples; i++) {
+				setHeight(snapshot.maxHeight, i + 1, j + 1, summary.topY[((j << lod) + offset) * 16 + (i << lod) + offset]);
+			}
+		}
 
-		int shadeType = minimap.config.mapConfig.shadeType.value;
-		boolean lighting = minimap.config.mapConfig.lighting.value;
-		boolean renderAll = minimap.config.mapConfig.renderAllBlocks.value;
+		shade(snapshot, colorBuffer);
+	}
 
-		for(int i=0; i < 18; i++) {
-			for(int j=0; j < 18; j++) {
-				int x = (posX << 4) + i - 1;
-				int z = (posZ << 4) + j - 1;
+	/**
+	 * Store the columns scanned by {@link #render(TileSnapshot, IntBuffer)} in the summary cache, or mark them
+	 * dirty again if the snapshot was not rendered. Must be called on the client thread.
+	 *
+	 * @return true if the height of a border column may have changed, so the borders of the neighbouring tiles have to be shaded again
+	 */
+	public boolean onTileScanned(TileSnapshot snapshot, boolean rendered) {
+		ColumnSummary scanned = snapshot.summary;
+		if(ColumnMask.isEmpty(scanned.dirtyColumns) || snapshot.summaryGeneration != summaryCache.getGeneration()) {
+			return false;
+		}
+		ColumnSummary summary = summaryCache.get(snapshot.posX, snapshot.posZ);
+		if(summary == null) {
+			// Evicted, it is scanned again when it is needed
+			return false;
+		}
+		if(!rendered) {
+			ColumnMask.add(summary.dirtyColumns, scanned.dirtyColumns);
+			return false;
+		}
 
-				setHeight(minHeightCache, i, j, -1);
-				setHeight(maxHeightCache, i, j, -1);
+		boolean bordersChanged = false;
+		for(int j=0; j < 16 && !bordersChanged; j++) {
+			for(int i=0; i < 16; i++) {
+				if(ColumnMask.isSet(BORDER_COLUMNS, i, j) && ColumnMask.isSet(scanned.dirtyColumns, i, j)) {
+					int column = j * 16 + i;
+					if(!ColumnMask.isSet(summary.scannedColumns, i, j) || summary.topY[column] != scanned.topY[column]) {
+						bordersChanged = true;
+						break;
+					}
+				}
+			}
+		}
+
+		scanned.copyTo(summary);
+		ColumnMask.add(summary.scannedColumns, scanned.dirtyColumns);
+		// Scanned again with the tints of the blocks that were found
+		ColumnMask.add(summary.dirtyColumns, snapshot.missingTints);
+		return bordersChanged;
+	}
+
+	/**
+	 * Scan the dirty columns of the summary of a snapshot
+	 *
+	 * @param renderTypes render type of each block id, see {@link BlockRenderManager}
+	 */
+	static void scanColumns(TileSnapshot snapshot, RenderType[] renderTypes) {
+		ChunkView view = snapshot.chunk;
+		ColumnSummary summary = snapshot.summary;
+
+		boolean renderAll = snapshot.renderAllBlocks;
+
+		long[] dirtyColumns = summary.dirtyColumns;
+
+		for(int j=0; j < 16; j++) {
+			for(int i=0; i < 16; i++) {
+				if(!ColumnMask.isSet(dirtyColumns, i, j)) {
+					continue;
+				}
 
-				boolean maxHeightSet = false;
+				int column = j * 16 + i;
 
-				for(int y = worldHeight - 1; y >= 0; y--) {
-					int id = world.getBlockId(x, y, z);
-					RenderType renderType = blockColors.getRenderType(id);
+				summary.clearColumn(column);
+
+				// Everything above the highest section that contains blocks is air. The heightmap is not used
+				// because blocks that don't block light (glass, leaves, fences...) are missing from it.
+				int startY = Math.min(view.worldHeight - 1, view.getTopSectionY());
+
+				int transparentDepth = 0;
+
+				for(int y = startY; y >= 0; y--) {
+					int id = view.getBlockId(i, y, j);
+					RenderType renderType = renderTypes[id];
 
 					if(renderAll && renderType == RenderType.INVISIBLE && id > 0) {
 						renderType = RenderType.OPAQUE;
 					}
 
-					if(renderType != RenderType.INVISIBLE) {
-						rendered = true;
-						if(!maxHeightSet) {
-							setHeight(maxHeightCache, i, j, y);
-							maxHeightSet = true;
-						}
+					if(renderType == RenderType.INVISIBLE) {
+						continue;
+					}
+
+					if(summary.topY[column] == -1) {
+						summary.topY[column] = (short) y;
 					}
+
 					if(renderType == RenderType.OPAQUE) {
-						setHeight(minHeightCache, i, j, y);
+						summary.opaqueY[column] = (short) y;
+						summary.opaqueBlock[column] = (short) id;
+						summary.opaqueMetadata[column] = (byte) view.getBlockMetadata(i, y, j);
+						summary.opaqueTint[column] = getTint(snapshot, i, j, id);
+						summary.opaqueLight[column] = getLight(snapshot, i, y, j);
 						break;
 					}
+
+					if(transparentDepth == 0) {
+						summary.transparentBlock[column] = (short) id;
+						summary.transparentMetadata[column] = (byte) view.getBlockMetadata(i, y, j);
+						summary.transparentTint[column] = getTint(snapshot, i, j, id);
+						summary.transparentLight[column] = getLight(snapshot, i, y, j);
+					}
+					if(transparentDepth < 255) {
+						transparentDepth++;
+					}
+				}
+
+				summary.transparentDepth[column] = (byte) transparentDepth;
+			}
+		}
+
+		summary.hasVisibleBlocks = false;
+		for(int column=0; column < ColumnSummary.COLUMNS; column++) {
+			if(summary.topY[column] != -1) {
+				summary.hasVisibleBlocks = true;
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Find the tint of a block in the tints of its column, or the tint of a block with the same color dispatch.
+	 * If there is none the column is marked to be scanned again.
+	 */
+	private static int getTint(TileSnapshot snapshot, int i, int j, int id) {
+		int base = (j * 16 + i) * TileSnapshot.TINT_CANDIDATES;
+		short[] tintBlocks = snapshot.tintBlocks;
+
+		for(int k=0; k < TileSnapshot.TINT_CANDIDATES; k++) {
+			if(tintBlocks[base + k] == id) {
+				return snapshot.tints[base + k];
+			}
+		}
+
+		BlockColorDispatcher dispatcher = BlockColorDispatcher.getInstance();
+		Block block = Blocks.getBlock(id);
+		if(block != null) {
+			Object dispatch = dispatcher.getDispatch(block);
+			for(int k=0; k < TileSnapshot.TINT_CANDIDATES && tintBlocks[base + k] != 0; k++) {
+				if(dispatcher.getDispatch(Blocks.getBlock(tintBlocks[base + k])) == dispatch) {
+					return snapshot.tints[base + k];
 				}
 			}
 		}
 
-		for(int i=0; i < 16; i++) {
-			for(int j=0; j < 16; j++) {
-				int x = (posX << 4) + i;
-				int z = (posZ << 4) + j;
+		ColumnMask.set(snapshot.missingTints, i, j);
+		return 0xFFFFFF;
+	}
 
+	/**
+	 * Light of the block above a block, the light emitted by the block itself is not included
+	 */
+	private static short getLight(TileSnapshot snapshot, int i, int y, int j) {
+		ChunkView view = snapshot.chunk;
+		int light = Math.max(view.getSkyLight(i, y + 1, j) - snapshot.skyDarken, view.getBlockLight(i, y + 1, j));
+		return ColumnSummary.encodeLight(snapshot.brightness[Math.max(light, 0)]);
+	}
+
+	/**
+	 * Compute the colors of the rectangle of a tile given by a snapshot from its scanned summary, other pixels
+	 * are not written. Level of detail tiles fill every block of pixels with the color of its sampled column.
+	 * Does not access the world and can be called from any thread.
+	 * <p>
+	 * Every transparent block of a column is shaded with the color and light of the top one. This only differs
+	 * from shading each block on its own where different transparent blocks are stacked, or where light fades
+	 * with depth, in which case deep water comes out slightly brighter.
+	 */
+	private void shade(TileSnapshot snapshot, IntBuffer colorBuffer) {
+		TileColors tileColors = minimap.tileColors;
+
+		int shadeType = snapshot.shadeType;
+		boolean lighting = snapshot.lighting;
+
+		int[] maxHeightCache = snapshot.maxHeight;
+		ColumnSummary summary = snapshot.summary;
+
+		int lod = snapshot.lod;
+		int step = 1 << lod;
+		int sampleOffset = getSampleOffset(lod);
+
+		for(int i = snapshot.x0; i <= snapshot.x1; i += step) {
+			for(int j = snapshot.z0; j <= snapshot.z1; j += step) {
 				int color = 0x0;
 
-				int i0 = i + 1;
-				int j0 = j + 1;
+				int i0 = (i >> lod) + 1;
+				int j0 = (j >> lod) + 1;
 
-				int minHeight = getHeight(minHeightCache, i0, j0);
+				int column = (j + sampleOffset) * 16 + i + sampleOffset;
+				int minHeight = summary.opaqueY[column];
 				int maxHeight = getHeight(maxHeightCache, i0, j0);
 
 				if(minHeight != -1 && maxHeight != -1) {
-					for(int y = minHeight; y <= maxHeight; y++) {
-						int id = world.getBlockId(x, y, z);
-						Block block = Blocks.getBlock(id);
-						RenderType renderType = blockColors.getRenderType(id);
+					color = tileColors.getTileColor(Blocks.getBlock(summary.opaqueBlock[column]), summary.opaqueMetadata[column] & 0xFF);
+					color = ColorUtils.multiply(color, summary.opaqueTint[column]);
+					if(lighting) {
+						color = ColorUtils.scale(color, ColumnSummary.decodeLight(summary.opaqueLight[column]));
+					}
 
-						if(renderAll && renderType == RenderType.INVISIBLE && id > 0) {
-							renderType = RenderType.OPAQUE;
+					// Mixing the same color converges after 9 steps, so deeper layers don't change the result
+					int transparentDepth = Math.min(summary.transparentDepth[column] & 0xFF, 16);
+					if(transparentDepth > 0) {
+						int transparentColor = tileColors.getTileColor(Blocks.getBlock(summary.transparentBlock[column]), summary.transparentMetadata[column] & 0xFF);
+						transparentColor = ColorUtils.multiply(transparentColor, summary.transparentTint[column]);
+						if(lighting) {
+							transparentColor = ColorUtils.scale(transparentColor, ColumnSummary.decodeLight(summary.transparentLight[column]));
 						}
-
-						if(renderType == RenderType.OPAQUE) {
-							color = tileColors.getTileColor(world, x, y, z, block);
-							color = multiplyColor(color, BlockColorDispatcher.getInstance().getDispatch(block).getWorldColor(world, x, y, z));
-							if(lighting) {
-								color = multiplyColor(color, block.getBlockBrightness(world, x, y + 1, z));
-							}
-						}else if(renderType == RenderType.TRANSPARENT) {
-							int transparentColor = tileColors.getTileColor(world, x, y, z, block);
-							transparentColor = multiplyColor(transparentColor, BlockColorDispatcher.getInstance().getDispatch(block).getWorldColor(world, x, y, z));
-							if(lighting) {
-								transparentColor = multiplyColor(transparentColor, block.getBlockBrightness(world, x, y + 1, z));
-							}
-
-							color = mixColor(color, transparentColor, 0.5f);
+						for(int k=0; k < transparentDepth; k++) {
+							color = ColorUtils.mixHalf(color, transparentColor);
 						}
 					}
 
-					float brightness = 1.0f;
+					int brightness = ColorUtils.ONE;
 
 					if(shadeType == 0) {
 						int y0 = getHeight(maxHeightCache, i0, j0+1);
@@ -137,7 +478,7 @@ public class MapTileRenderer {
 						int y2 = getHeight(maxHeightCache, i0, j0-1);
 						int y3 = getHeight(maxHeightCache, i0-1, j0);
 
-						if(y0 > maxHeight || y1 > maxHeight || y2 > maxHeight || y3 > maxHeight) brightness *= 0.75f;
+						if(y0 > maxHeight || y1 > maxHeight || y2 > maxHeight || y3 > maxHeight) brightness = BRIGHTNESS_SHADOW;
 					}else if(shadeType == 1) {
 						int y0 = getHeight(maxHeightCache, i0, j0-1);
 						int y1 = getHeight(maxHeightCache, i0-1, j0-1);
@@ -154,8 +495,8 @@ public class MapTileRenderer {
 						if(y1 > maxHeight) darkCount++;
 						if(y2 > maxHeight) darkCount++;
 
-						if(brightCount > darkCount) brightness *= 1.25f;
-						if(darkCount > brightCount) brightness *= 0.65f;
+						if(brightCount > darkCount) brightness = BRIGHTNESS_SLOPE_BRIGHT;
+						if(darkCount > brightCount) brightness = BRIGHTNESS_SLOPE_DARK;
 					}else if(shadeType == 2) {
 						int offset = 0;
 
@@ -166,17 +507,20 @@ public class MapTileRenderer {
 						offset += getHeight(maxHeightCache, i0, j0 + 1) - maxHeight;
 
 						offset = Utils.clamp(offset, -8, 8);
-						brightness = (offset / 8.0f) / 2.0f + 1.0f;
+						brightness = ColorUtils.ONE + offset * (ColorUtils.ONE / 16);
 					}
 
-					color = multiplyColor(color, brightness);
+					color = ColorUtils.scale(color, brightness);
 					color |= 0xFF000000;
 				}
 
-				colorBuffer.put(j * 16 + i, color);
+				for(int z = j; z < j + step; z++) {
+					for(int x = i; x < i + step; x++) {
+						colorBuffer.put(z * 16 + x, color);
+					}
+				}
 			}
 		}
-		return rendered;
 	}
 
 	private void setHeight(int[] heightCache, int i, int j, int height) {
@@ -189,6 +533,7 @@ public class MapTileRenderer {
 
 	public void onWorldChanged(World world) {
 		this.world = world;
+		summaryCache.invalidateAll();
 	}
 
 }
@@ -0,0 +1,392 @@
+package b100.minimap.render;
+
+import static org.lwjgl.opengl.GL11.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import b100.minimap.Minimap;
+import b100.minimap.utils.LongObjectMap;
+import b100.minimap.utils.TileDownsampler;
+import b100.minimap.utils.TilePixels;
+
+/**
+ * Composites finished tiles into {@link MapRegion} textures, so the map is drawn with one quad per region
+ * instead of one per chunk. The region textures are the only copy of the tiles on the GPU.
+ * <p>
+ * A chunk gets a tile with {@link #addTile(int, int, int)}, which creates its region texture if needed.
+ * New regions are only created while they fit into the memory budget, see {@link #canAddTile(int, int, int)}.
+ * Changed rectangles of tiles and removed tiles are queued for upload into their region texture right away, and the uploads of
+ * each level of detail are sent once per frame by {@link #flush()}, whole tiles next to each other in a row
+ * of a region with one call. A region is deleted as soon as its last tile is removed.
+ * <p>
+ * Regions are kept in order of when they were last inside the view, see {@link #setView(int, int, int, int)}.
+ * To make room, {@link #evictRegion()} deletes the region that has been outside of the view the longest
+ * without searching for it.
+ */
+public class RegionCompositor {
+
+	private final Minimap minimap;
+
+	private final LongObjectMap<MapRegion>[] regions;
+	private final TileUploadQueue[] uploadQueues;
+
+	private final int[] tilePixels = new int[16 * 16];
+	private final int[] emptyPixels = new int[16 * 16];
+	private final IntBuffer emptyTexture;
+
+	private long version;
+
+	/**
+	 * Number of chunks with a tile at each level of detail
+	 */
+	private final int[] tileCounts;
+
+	private long memoryUsage;
+	private long memoryBudget = Long.MAX_VALUE;
+
+	/**
+	 * Rectangle of chunks in view, and a number that changes whenever it moves
+	 */
+	private int viewX0, viewZ0, viewX1, viewZ1;
+	private int view;
+
+	/**
+	 * Most and least recently viewed region
+	 */
+	private MapRegion newest;
+	private MapRegion oldest;
+
+	@SuppressWarnings("unchecked")
+	public RegionCompositor(Minimap minimap, int lodLevels, TileUploader uploader) {
+		this.minimap = minimap;
+
+		regions = new LongObjectMap[lodLevels];
+		uploadQueues = new TileUploadQueue[lodLevels];
+		tileCounts = new int[lodLevels];
+		for(int lod=0; lod < lodLevels; lod++) {
+			regions[lod] = new LongObjectMap<>(64);
+			uploadQueues[lod] = new TileUploadQueue(uploader, MapRegion.TILE_WIDTH >> lod);
+		}
+
+		int width = MapRegion.SIZE * MapRegion.TILE_WIDTH;
+		emptyTexture = ByteBuffer.allocateDirect(width * width * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+
+	/**
+	 * @return true if the chunk can get a tile without exceeding the memory budget, because its region exists or fits
+	 */
+	public boolean canAddTile(int chunkX, int chunkZ, int lod) {
+		return getRegion(chunkX, chunkZ, lod) != null || memoryUsage + getRegionMemory(lod) <= memoryBudget;
+	}
+
+	/**
+	 * Give a chunk a tile, creating its region if needed. The tile is drawn once it has been marked with {@link #markTile(int, int, int, int[])}.
+	 */
+	public void addTile(int chunkX, int chunkZ, int lod) {
+		MapRegion region = getRegion(chunkX, chunkZ, lod);
+		if(region == null) {
+			region = createRegion(chunkX >> MapRegion.SHIFT, chunkZ >> MapRegion.SHIFT, lod);
+			regions[lod].put(MapRender.getChunkKey(region.regionX, region.regionZ), region);
+		}
+		long bit = 1L << MapRegion.getIndex(chunkX, chunkZ);
+		if((region.presentChunks & bit) == 0L) {
+			region.presentChunks |= bit;
+			tileCounts[lod]++;
+		}
+	}
+
+	/**
+	 * Queue the whole tile of a chunk for upload, it is drawn with the new pixels after the next flush
+	 *
+	 * @param pixels full resolution pixels of the chunk, downsampled to the level of detail of the region
+	 */
+	public void markTile(int chunkX, int chunkZ, int lod, int[] pixels) {
+		markTile(chunkX, chunkZ, lod, pixels, 0, 0, MapRegion.TILE_WIDTH, MapRegion.TILE_WIDTH);
+	}
+
+	/**
+	 * Queue a changed rectangle of the tile of a chunk for upload, only the pixels covering it are uploaded
+	 *
+	 * @param pixels full resolution pixels of the chunk, downsampled to the level of detail of the region
+	 * @param x rectangle in full resolution pixels of the tile
+	 */
+	public void markTile(int chunkX, int chunkZ, int lod, int[] pixels, int x, int z, int width, int height) {
+		MapRegion region = getRegion(chunkX, chunkZ, lod);
+		if(region == null) {
+			return;
+		}
+		int index = MapRegion.getIndex(chunkX, chunkZ);
+		if((region.presentChunks & (1L << index)) == 0L) {
+			return;
+		}
+		TileDownsampler.downsample(pixels, MapRegion.TILE_WIDTH, tilePixels, 1 << lod);
+
+		// Every pixel of a level of detail tile that covers part of the rectangle
+		int x0 = x >> lod;
+		int z0 = z >> lod;
+		int x1 = (x + width - 1) >> lod;
+		int z1 = (z + height - 1) >> lod;
+		uploadQueues[lod].add(region.texture, index & (MapRegion.SIZE - 1), index >> MapRegion.SHIFT, tilePixels, x0, z0, x1 - x0 + 1, z1 - z0 + 1);
+	}
+
+	/**
+	 * Remove the tile of a chunk and clear it from the region texture.
+	 * The region is deleted if it has no tiles left.
+	 */
+	public void removeTile(int chunkX, int chunkZ, int lod) {
+		MapRegion region = getRegion(chunkX, chunkZ, lod);
+		if(region == null) {
+			return;
+		}
+		int index = MapRegion.getIndex(chunkX, chunkZ);
+		long bit = 1L << index;
+		if((region.presentChunks & bit) == 0L) {
+			return;
+		}
+		region.presentChunks &= ~bit;
+		tileCounts[lod]--;
+		if(region.presentChunks == 0L) {
+			deleteRegion(region);
+		}else {
+			clearTile(region, index);
+		}
+	}
+
+	/**
+	 * @return the region containing a chunk, or null if it has none
+	 */
+	public MapRegion getRegion(int chunkX, int chunkZ, int lod) {
+		return regions[lod].get(MapRender.getChunkKey(chunkX >> MapRegion.SHIFT, chunkZ >> MapRegion.SHIFT));
+	}
+
+	/**
+	 * Set the rectangle of chunks in view, bounds are inclusive. Regions overlapping it are never evicted.
+	 */
+	public void setView(int x0, int z0, int x1, int z1) {
+		if(x0 == viewX0 && z0 == viewZ0 && x1 == viewX1 && z1 == viewZ1 && view != 0) {
+			return;
+		}
+		viewX0 = x0;
+		viewZ0 = z0;
+		viewX1 = x1;
+		viewZ1 = z1;
+		view++;
+
+		for(int lod=0; lod < regions.length; lod++) {
+			for(int regionX = x0 >> MapRegion.SHIFT; regionX <= x1 >> MapRegion.SHIFT; regionX++) {
+				for(int regionZ = z0 >> MapRegion.SHIFT; regionZ <= z1 >> MapRegion.SHIFT; regionZ++) {
+					MapRegion region = regions[lod].get(MapRender.getChunkKey(regionX, regionZ));
+					if(region != null) {
+						region.lastView = view;
+						unlink(region);
+						linkNewest(region);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Delete the region that has been outside of the view the longest, regardless of its tiles.
+	 * The chunks in {@link MapRegion#presentChunks} of the returned region no longer have a tile.
+	 *
+	 * @return the deleted region, or null if all regions are in view
+	 */
+	public MapRegion evictRegion() {
+		MapRegion region = oldest;
+		if(region == null || region.lastView == view) {
+			return null;
+		}
+		deleteRegion(region);
+		return region;
+	}
+
+	/**
+	 * Upload the queued tiles of all levels of detail
+	 */
+	public void flush() {
+		for(int lod=0; lod < uploadQueues.length; lod++) {
+			uploadQueues[lod].flush();
+		}
+	}
+
+	private void clearTile(MapRegion region, int index) {
+		TileUploadQueue uploadQueue = uploadQueues[region.lod];
+		int localX = index & (MapRegion.SIZE - 1);
+		int localZ = index >> MapRegion.SHIFT;
+		uploadQueue.add(region.texture, localX, localZ, emptyPixels, 0, 0, uploadQueue.tileWidth, uploadQueue.tileWidth);
+	}
+
+	private MapRegion createRegion(int regionX, int regionZ, int lod) {
+		int width = MapRegion.SIZE * (MapRegion.TILE_WIDTH >> lod);
+
+		int texture = minimap.minecraftHelper.generateTexture();
+		glBindTexture(GL_TEXTURE_2D, texture);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP);
+		glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP);
+		// Start transparent, chunks without a tile are never uploaded
+		emptyTexture.clear();
+		emptyTexture.limit(width * width);
+		glTexImage2D(GL_TEXTURE_2D, 0, TilePixels.INTERNAL_FORMAT, width, width, 0, TilePixels.FORMAT, TilePixels.TYPE, emptyTexture);
+
+		memoryUsage += getRegionMemory(lod);
+		version++;
+
+		MapRegion region = new MapRegion(regionX, regionZ, lod, texture);
+		// New regions are created for chunks close to the player, so they count as viewed
+		region.lastView = view;
+		linkNewest(region);
+		return region;
+	}
+
+	private void deleteRegion(MapRegion region) {
+		regions[region.lod].remove(MapRender.getChunkKey(region.regionX, region.regionZ));
+		unlink(region);
+		tileCounts[region.lod] -= Long.bitCount(region.presentChunks);
+		uploadQueues[region.lod].cancel(region.texture);
+		glDeleteTextures(region.texture);
+		memoryUsage -= getRegionMemory(region.lod);
+		version++;
+	}
+
+	/**
+	 * Delete all regions
+	 */
+	public void clear() {
+		for(int lod=0; lod < regions.length; lod++) {
+			LongObjectMap<MapRegion> lodRegions = regions[lod];
+			for(int i=0; i < lodRegions.getSlotCount(); i++) {
+				MapRegion region = lodRegions.getValueAt(i);
+				if(region != null) {
+					glDeleteTextures(region.texture);
+				}
+			}
+			lodRegions.clear();
+			uploadQueues[lod].clear();
+			tileCounts[lod] = 0;
+		}
+		newest = null;
+		oldest = null;
+		memoryUsage = 0;
+		version++;
+	}
+
+	/**
+	 * @return a number that changes whenever a region is created or deleted
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Regions of a level of detail, iterate with {@link LongObjectMap#getSlotCount()}
+	 */
+	public LongObjectMap<MapRegion> getRegions(int lod) {
+		return regions[lod];
+	}
+
+	public int getRegionCount(int lod) {
+		return regions[lod].size();
+	}
+
+	public int getRegionCount() {
+		int count = 0;
+		for(int lod=0; lod < regions.length; lod++) {
+			count += regions[lod].size();
+		}
+		return count;
+	}
+
+	/**
+	 * @return number of chunks with a tile at a level of detail
+	 */
+	public int getTileCount(int lod) {
+		return tileCounts[lod];
+	}
+
+	/**
+	 * @return number of tiles the regions of a level of detail have room for, each chunk of a region has a fixed slot
+	 */
+	public int getSlotCount(int lod) {
+		return regions[lod].size() * MapRegion.SIZE * MapRegion.SIZE;
+	}
+
+	/**
+	 * @return width of a tile in pixels at a level of detail
+	 */
+	public int getTileWidth(int lod) {
+		return uploadQueues[lod].tileWidth;
+	}
+
+	/**
+	 * @return texture memory used by all regions in bytes
+	 */
+	public long getMemoryUsage() {
+		return memoryUsage;
+	}
+
+	/**
+	 * @return texture memory used by the regions of a level of detail in bytes
+	 */
+	public long getMemoryUsage(int lod) {
+		return regions[lod].size() * getRegionMemory(lod);
+	}
+
+	/**
+	 * @return texture memory used by one region of a level of detail in bytes
+	 */
+	public static long getRegionMemory(int lod) {
+		int width = MapRegion.SIZE * (MapRegion.TILE_WIDTH >> lod);
+		return (long) width * width * 4;
+	}
+
+	/**
+	 * Limit the texture memory used by regions. Existing regions are not deleted, see {@link #canAddTile(int, int, int)}
+	 * and {@link #evictRegion()}.
+	 */
+	public void setMemoryBudget(long bytes) {
+		this.memoryBudget = bytes;
+	}
+
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Upload queue of a level of detail, for its statistics
+	 */
+	public TileUploadQueue getUploadQueue(int lod) {
+		return uploadQueues[lod];
+	}
+
+	private void linkNewest(MapRegion region) {
+		region.newer = null;
+		region.older = newest;
+		if(newest != null) {
+			newest.newer = region;
+		}else {
+			oldest = region;
+		}
+		newest = region;
+	}
+
+	private void unlink(MapRegion region) {
+		if(region.newer != null) {
+			region.newer.older = region.older;
+		}else if(newest == region) {
+			newest = region.older;
+		}
+		if(region.older != null) {
+			region.older.newer = region.newer;
+		}else if(oldest == region) {
+			oldest = region.newer;
+		}
+		region.newer = null;
+		region.older = null;
+	}
+
+}
@@ -49,9 +49,13 @@ public class RenderHelper {
 	 * pain 
 	 */
 	public void drawRotatedRectangle(Tessellator tessellator, double x, double y, double w, double h, float u0, float v0, float u1, float v1, double zLevel, double angle) {
-		double sin = Math.sin(angle);
-		double cos = Math.cos(angle);
-		
+		drawRotatedRectangle(tessellator, x, y, w, h, u0, v0, u1, v1, zLevel, Math.sin(angle), Math.cos(angle));
+	}
+	
+	/**
+	 * Same as {@link #drawRotatedRectangle(Tessellator, double, double, double, double, float, float, float, float, double, double)} with the sine and cosine of the angle already computed
+	 */
+	public void drawRotatedRectangle(Tessellator tessellator, double x, double y, double w, double h, float u0, float v0, float u1, float v1, double zLevel, double sin, double cos) {
 		double originX = x + w / 2;
 		double originY = y + h / 2;
 		
@@ -0,0 +1,52 @@
+package b100.minimap.render;
+
+import java.nio.IntBuffer;
+
+/**
+ * A tile waiting to be shaded by a {@link TileRenderPipeline} worker.
+ */
+public class TileJob implements Runnable {
+
+	public final TileSnapshot snapshot = new TileSnapshot();
+	public final int[] pixels = new int[16 * 16];
+
+	private final IntBuffer pixelBuffer = IntBuffer.wrap(pixels);
+	private final TileRenderPipeline pipeline;
+
+	public MapChunk chunk;
+
+	/**
+	 * Set on the client thread when the chunk of this job is no longer needed
+	 */
+	public volatile boolean cancelled;
+
+	public boolean failed;
+
+	public TileJob(TileRenderPipeline pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	@Override
+	public void run() {
+		try {
+			if(!cancelled) {
+				pipeline.tileRenderer.render(snapshot, pixelBuffer);
+			}
+		}catch (Throwable e) {
+			failed = true;
+		}finally {
+			pipeline.onJobFinished(this);
+		}
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	void reset() {
+		chunk = null;
+		cancelled = false;
+		failed = false;
+	}
+
+}
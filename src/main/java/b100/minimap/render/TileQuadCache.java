@@ -0,0 +1,91 @@
+package b100.minimap.render;
+
+/**
+ * Decides when the retained geometry of the map tiles has to be built again.
+ * <p>
+ * The quads are built relative to an origin chunk, so moving the player only changes the
+ * translation they are drawn with. They are rebuilt when the drawn textures change, the
+ * zoom or the level of detail radius changes, or a chunk enters or leaves the visible range.
+ */
+public class TileQuadCache {
+
+	private boolean valid;
+
+	private long tileVersion;
+	private int zoom;
+	private int lodRadius;
+	private int minX;
+	private int minZ;
+	private int maxX;
+	private int maxZ;
+
+	/**
+	 * Number of times the geometry has been built
+	 */
+	public int rebuilds;
+
+	/**
+	 * Compute the visible range of chunks and remember the state if the geometry has to be built again
+	 *
+	 * @param tileVersion changes whenever a texture the quads are drawn with is created or deleted
+	 * @param offsetX map pixel position of the center of the map
+	 * @param extent distance from the center to the edge of the visible area in map pixels
+	 * @param tileSize size of a chunk in map pixels
+	 * @return true if the geometry has to be built again
+	 */
+	public boolean update(long tileVersion, int zoom, int lodRadius, int offsetX, int offsetZ, int extent, int tileSize) {
+		int minX = Math.floorDiv(offsetX - extent, tileSize);
+		int minZ = Math.floorDiv(offsetZ - extent, tileSize);
+		int maxX = -Math.floorDiv(-(offsetX + extent), tileSize) - 1;
+		int maxZ = -Math.floorDiv(-(offsetZ + extent), tileSize) - 1;
+
+		if(valid
+			&& tileVersion == this.tileVersion
+			&& zoom == this.zoom
+			&& lodRadius == this.lodRadius
+			&& minX == this.minX
+			&& minZ == this.minZ
+			&& maxX == this.maxX
+			&& maxZ == this.maxZ) {
+			return false;
+		}
+
+		this.valid = true;
+		this.tileVersion = tileVersion;
+		this.zoom = zoom;
+		this.lodRadius = lodRadius;
+		this.minX = minX;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxZ = maxZ;
+		rebuilds++;
+		return true;
+	}
+
+	public void invalidate() {
+		valid = false;
+	}
+
+	/**
+	 * @return the chunk the geometry is relative to
+	 */
+	public int getOriginX() {
+		return minX;
+	}
+
+	public int getOriginZ() {
+		return minZ;
+	}
+
+	public boolean isInRange(int chunkX, int chunkZ) {
+		return chunkX >= minX && chunkX <= maxX && chunkZ >= minZ && chunkZ <= maxZ;
+	}
+
+	/**
+	 * @return true if a rectangle of chunks overlaps the range, bounds are inclusive
+	 */
+	public boolean isInRange(int x0, int z0, int x1, int z1) {
+		return x1 >= minX && x0 <= maxX && z1 >= minZ && z0 <= maxZ;
+	}
+
+}
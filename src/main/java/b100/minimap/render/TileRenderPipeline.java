@@ -0,0 +1,143 @@
+package b100.minimap.render;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import b100.minimap.Minimap;
+
+/**
+ * Scans and shades tiles on a bounded pool of worker threads.
+ * <p>
+ * The client thread snapshots a tile into a {@link TileJob} and submits it, a worker
+ * scans the changed columns of the snapshot and shades it into ARGB pixels, and the
+ * finished job is handed back to the client thread through {@link #pollFinished()}
+ * to be uploaded.
+ */
+public class TileRenderPipeline {
+
+	/**
+	 * Number of jobs that can wait for a worker, per worker thread
+	 */
+	public static final int QUEUE_SIZE_PER_THREAD = 16;
+
+	public final MapTileRenderer tileRenderer;
+
+	private ThreadPoolExecutor executor;
+	private int threadCount = 0;
+
+	private final Queue<TileJob> finishedJobs = new ConcurrentLinkedQueue<>();
+	private final Queue<TileJob> unusedJobs = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger jobsInFlight = new AtomicInteger();
+
+	private static final AtomicInteger threadIndex = new AtomicInteger();
+
+	public TileRenderPipeline(MapTileRenderer tileRenderer) {
+		this.tileRenderer = tileRenderer;
+	}
+
+	/**
+	 * Change the number of worker threads. With 0 threads, tiles are rendered synchronously by the caller.
+	 */
+	public void setThreadCount(int threadCount) {
+		if(threadCount == this.threadCount) {
+			return;
+		}
+		shutdown();
+		this.threadCount = threadCount;
+		if(threadCount > 0) {
+			Minimap.log("Starting " + threadCount + " tile render threads");
+			executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threadCount * QUEUE_SIZE_PER_THREAD), (r) -> {
+				Thread thread = new Thread(r, "Minimap-TileRenderer-" + threadIndex.incrementAndGet());
+				thread.setDaemon(true);
+				thread.setPriority(Thread.NORM_PRIORITY - 1);
+				return thread;
+			});
+		}
+	}
+
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	public boolean isEnabled() {
+		return executor != null;
+	}
+
+	/**
+	 * @return true if another job can be submitted without being rejected
+	 */
+	public boolean canSubmit() {
+		return executor != null && executor.getQueue().remainingCapacity() > 0;
+	}
+
+	public TileJob obtainJob() {
+		TileJob job = unusedJobs.poll();
+		if(job == null) {
+			job = new TileJob(this);
+		}
+		job.reset();
+		return job;
+	}
+
+	/**
+	 * @return false if the job was rejected, in which case it is released again
+	 */
+	public boolean submit(TileJob job) {
+		if(executor == null) {
+			releaseJob(job);
+			return false;
+		}
+		jobsInFlight.incrementAndGet();
+		try {
+			executor.execute(job);
+			return true;
+		}catch (RejectedExecutionException e) {
+			jobsInFlight.decrementAndGet();
+			releaseJob(job);
+			return false;
+		}
+	}
+
+	void onJobFinished(TileJob job) {
+		finishedJobs.add(job);
+	}
+
+	/**
+	 * Return the next job that has been shaded or cancelled, or null. Finished jobs must be released with {@link #releaseJob(TileJob)}.
+	 */
+	public TileJob pollFinished() {
+		TileJob job = finishedJobs.poll();
+		if(job != null) {
+			jobsInFlight.decrementAndGet();
+		}
+		return job;
+	}
+
+	public void releaseJob(TileJob job) {
+		job.reset();
+		unusedJobs.add(job);
+	}
+
+	public int getJobsInFlight() {
+		return jobsInFlight.get();
+	}
+
+	public void shutdown() {
+		if(executor != null) {
+			// Jobs that never started still have to come back so their chunks can be updated again
+			for(Runnable runnable : executor.shutdownNow()) {
+				TileJob job = (TileJob) runnable;
+				job.cancel();
+				finishedJobs.add(job);
+			}
+			executor = null;
+		}
+		threadCount = 0;
+	}
+
+}
@@ -0,0 +1,76 @@
+package b100.minimap.render;
+
+/**
+ * Everything {@link MapTileRenderer} needs to scan and shade one tile, copied from the
+ * world and the column summaries on the client thread so the tile can be rendered on
+ * any thread.
+ */
+public class TileSnapshot {
+
+	/**
+	 * Number of blocks per column that a tint is looked up for, see {@link #tintBlocks}
+	 */
+	public static final int TINT_CANDIDATES = 3;
+
+	public int posX;
+	public int posZ;
+
+	/**
+	 * Rectangle of columns to shade, bounds are inclusive
+	 */
+	public int x0, z0, x1, z1;
+
+	/**
+	 * Level of detail of the tile, only every (1 << lod)-th column is scanned and shaded, see {@link MapTileRenderer#getSampleOffset(int)}
+	 */
+	public int lod;
+
+	public int shadeType;
+	public boolean lighting;
+	public boolean renderAllBlocks;
+
+	/**
+	 * True if any non-invisible block was found in the tile
+	 */
+	public boolean rendered;
+
+	/**
+	 * Height of the top non-invisible block of each sampled column of the tile and its one sample border, -1 if there is none.
+	 * Rows are (16 >> lod) + 2 wide.
+	 */
+	public final int[] maxHeight = new int[18 * 18];
+
+	/**
+	 * Copy of the column summary of the tile. Its dirty columns are scanned again from {@link #chunk}.
+	 */
+	public final ColumnSummary summary = new ColumnSummary();
+
+	/**
+	 * Generation of the summary cache the summary was copied from, see {@link ColumnSummaryCache#getGeneration()}
+	 */
+	public int summaryGeneration;
+
+	/**
+	 * Blocks and light of the chunk, only copied if the summary has dirty columns
+	 */
+	public final ChunkView chunk = new ChunkView();
+
+	/**
+	 * Tints need the world, so they are looked up on the client thread for the blocks the scan is likely to
+	 * find: the blocks of the last scan and the top block of the heightmap. 0 marks an unused candidate.
+	 */
+	public final short[] tintBlocks = new short[ColumnSummary.COLUMNS * TINT_CANDIDATES];
+	public final int[] tints = new int[ColumnSummary.COLUMNS * TINT_CANDIDATES];
+
+	/**
+	 * Columns where the scan found a block without a tint, see {@link ColumnMask}
+	 */
+	public final long[] missingTints = ColumnMask.create();
+
+	/**
+	 * Brightness of each light level as 16.16 fixed point, and the amount the sky light is darkened by
+	 */
+	public final int[] brightness = new int[ChunkView.MAX_LIGHT + 1];
+	public int skyDarken;
+
+}
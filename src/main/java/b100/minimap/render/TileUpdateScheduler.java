@@ -0,0 +1,97 @@
+package b100.minimap.render;
+
+/**
+ * Decides how much time the client thread may spend on tile updates each frame.
+ * <p>
+ * The budget grows towards a maximum while frames are faster than the target frame
+ * time and is halved when they are slower. The cost of a tile is estimated from
+ * the measured cost per column of previous tiles, so a tile is only started if it
+ * is expected to fit into the remaining budget.
+ */
+public class TileUpdateScheduler {
+
+	/**
+	 * The budget never drops below this, so tiles are still updated when the game can't reach the target frame rate
+	 */
+	public static final long MIN_BUDGET = 100000L;
+
+	private static final long INITIAL_COST_PER_COLUMN = 500L;
+
+	private long lastFrameStart;
+
+	/**
+	 * Smoothed time between the last frames in nanoseconds
+	 */
+	public long frameTime;
+
+	/**
+	 * Time that may be spent on tile updates this frame in nanoseconds
+	 */
+	public long budget = MIN_BUDGET;
+
+	/**
+	 * Time spent on tile updates this frame in nanoseconds
+	 */
+	public long used;
+
+	/**
+	 * Number of tiles updated this frame
+	 */
+	public int tiles;
+
+	/**
+	 * Average cost of one column in nanoseconds
+	 */
+	public long costPerColumn = INITIAL_COST_PER_COLUMN;
+
+	/**
+	 * Measure the frame time and compute the budget for this frame
+	 */
+	public void beginFrame(long maxBudget, int targetFps) {
+		long now = System.nanoTime();
+		if(lastFrameStart != 0) {
+			long frame = now - lastFrameStart;
+			frameTime = frameTime == 0 ? frame : frameTime + (frame - frameTime) / 8;
+		}
+		lastFrameStart = now;
+
+		long targetFrameTime = 1000000000L / Math.max(targetFps, 1);
+		if(frameTime > targetFrameTime + targetFrameTime / 20) {
+			budget /= 2;
+		}else {
+			budget += maxBudget / 10;
+		}
+		budget = Math.max(MIN_BUDGET, Math.min(budget, maxBudget));
+
+		used = 0;
+		tiles = 0;
+	}
+
+	/**
+	 * @return true if a tile with the given number of columns is expected to fit into the remaining budget. At least one tile is allowed per frame.
+	 */
+	public boolean canAfford(int columns) {
+		return tiles == 0 || used + estimate(columns) <= budget;
+	}
+
+	public long estimate(int columns) {
+		return columns * costPerColumn;
+	}
+
+	/**
+	 * Charge work that is not a tile update, like uploading finished tiles, to the budget
+	 */
+	public void onWorkDone(long nanos) {
+		used += nanos;
+	}
+
+	public void onTileDone(int columns, long nanos) {
+		used += nanos;
+		tiles++;
+		if(columns > 0) {
+			long cost = nanos / columns;
+			costPerColumn = Math.max(1L, costPerColumn + (cost - costPerColumn) / 16);
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+package b100.minimap.render;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import b100.minimap.utils.LongObjectMap;
+import b100.minimap.utils.TilePixels;
+
+/**
+ * Collects tile uploads during a frame and sends them to the texture in as few calls as possible.
+ * <p>
+ * A tile changed several times before the flush is only uploaded once. On flush, whole tiles that
+ * sit next to each other in the same row of a texture are packed into one staging buffer and uploaded
+ * with a single call, tiles that only changed partly are uploaded as their changed rectangle.
+ */
+public class TileUploadQueue {
+
+	/**
+	 * Maximum number of tiles uploaded with one call
+	 */
+	public static final int MAX_TILES_PER_UPLOAD = 64;
+
+	private final TileUploader uploader;
+
+	/**
+	 * Width of a tile in pixels
+	 */
+	public final int tileWidth;
+
+	private final IntBuffer stagingBuffer;
+
+	private final LongObjectMap<Upload> pending = new LongObjectMap<>(256);
+	private final List<Upload> sortedUploads = new ArrayList<>();
+	private final List<Upload> unusedUploads = new ArrayList<>();
+
+	/**
+	 * Tiles uploaded by the last flush
+	 */
+	public int lastTiles;
+
+	/**
+	 * Upload calls made by the last flush
+	 */
+	public int lastUploads;
+
+	public TileUploadQueue(TileUploader uploader, int tileWidth) {
+		this.uploader = uploader;
+		this.tileWidth = tileWidth;
+		this.stagingBuffer = ByteBuffer.allocateDirect(MAX_TILES_PER_UPLOAD * tileWidth * tileWidth * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+	}
+
+	/**
+	 * Queue a changed rectangle of a tile for upload. The pixels are copied, so the array can be changed afterwards.
+	 *
+	 * @param tileX column of the tile in the texture
+	 * @param tileY row of the tile in the texture
+	 * @param pixels current content of the whole tile as tileWidth * tileWidth ARGB pixels. Rectangles queued for the same tile are merged, so the pixels outside of this rectangle must be up to date as well.
+	 */
+	public void add(int texture, int tileX, int tileY, int[] pixels, int x, int y, int width, int height) {
+		long key = getKey(texture, tileX, tileY);
+		Upload upload = pending.get(key);
+		if(upload == null) {
+			upload = unusedUploads.size() > 0 ? unusedUploads.remove(unusedUploads.size() - 1) : new Upload(tileWidth);
+			upload.texture = texture;
+			upload.tileX = tileX;
+			upload.tileY = tileY;
+			upload.x0 = x;
+			upload.y0 = y;
+			upload.x1 = x + width - 1;
+			upload.y1 = y + height - 1;
+			pending.put(key, upload);
+		}else {
+			upload.x0 = Math.min(upload.x0, x);
+			upload.y0 = Math.min(upload.y0, y);
+			upload.x1 = Math.max(upload.x1, x + width - 1);
+			upload.y1 = Math.max(upload.y1, y + height - 1);
+		}
+		System.arraycopy(pixels, 0, upload.pixels, 0, upload.pixels.length);
+	}
+
+	/**
+	 * Upload all queued tiles
+	 */
+	public void flush() {
+		lastTiles = 0;
+		lastUploads = 0;
+		if(pending.isEmpty()) {
+			return;
+		}
+
+		for(int i=0; i < pending.getSlotCount(); i++) {
+			Upload upload = pending.getValueAt(i);
+			if(upload != null) {
+				sortedUploads.add(upload);
+			}
+		}
+		Collections.sort(sortedUploads, uploadOrder);
+
+		int i = 0;
+		while(i < sortedUploads.size()) {
+			Upload first = sortedUploads.get(i);
+			if(!first.isFull(tileWidth)) {
+				uploadRect(first);
+				i++;
+				continue;
+			}
+
+			// Find the run of whole tiles directly to the right of this one
+			int count = 1;
+			while(i + count < sortedUploads.size() && count < MAX_TILES_PER_UPLOAD) {
+				Upload next = sortedUploads.get(i + count);
+				if(!next.isFull(tileWidth) || next.texture != first.texture || next.tileY != first.tileY || next.tileX != first.tileX + count) {
+					break;
+				}
+				count++;
+			}
+			uploadRun(i, count);
+			i += count;
+		}
+
+		for(int j=0; j < sortedUploads.size(); j++) {
+			unusedUploads.add(sortedUploads.get(j));
+		}
+		sortedUploads.clear();
+		pending.clear();
+	}
+
+	public int size() {
+		return pending.size();
+	}
+
+	public void clear() {
+		for(int i=0; i < pending.getSlotCount(); i++) {
+			Upload upload = pending.getValueAt(i);
+			if(upload != null) {
+				unusedUploads.add(upload);
+			}
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Drop all queued uploads to a texture, used before the texture is deleted
+	 */
+	public void cancel(int texture) {
+		for(int i=0; i < pending.getSlotCount(); i++) {
+			Upload upload = pending.getValueAt(i);
+			if(upload != null && upload.texture == texture) {
+				pending.remove(pending.getKeyAt(i));
+				unusedUploads.add(upload);
+				// Removing shifts the following entries back, so look at this slot again
+				i--;
+			}
+		}
+	}
+
+	private void uploadRect(Upload upload) {
+		int width = upload.x1 - upload.x0 + 1;
+		int height = upload.y1 - upload.y0 + 1;
+
+		stagingBuffer.clear();
+		TilePixels.copyRect(upload.pixels, tileWidth, upload.x0, upload.y0, width, height, stagingBuffer);
+		stagingBuffer.flip();
+
+		uploader.upload(upload.texture, upload.tileX * tileWidth + upload.x0, upload.tileY * tileWidth + upload.y0, width, height, stagingBuffer);
+		lastTiles++;
+		lastUploads++;
+	}
+
+	/**
+	 * Upload whole tiles that are next to each other in one row as a single image
+	 */
+	private void uploadRun(int start, int count) {
+		Upload first = sortedUploads.get(start);
+
+		stagingBuffer.clear();
+		for(int y=0; y < tileWidth; y++) {
+			for(int i=0; i < count; i++) {
+				stagingBuffer.put(sortedUploads.get(start + i).pixels, y * tileWidth, tileWidth);
+			}
+		}
+		stagingBuffer.flip();
+
+		uploader.upload(first.texture, first.tileX * tileWidth, first.tileY * tileWidth, count * tileWidth, tileWidth, stagingBuffer);
+		lastTiles += count;
+		lastUploads++;
+	}
+
+	private static long getKey(int texture, int tileX, int tileY) {
+		return (long) texture << 32 | (tileY & 0xFFFFL) << 16 | (tileX & 0xFFFFL);
+	}
+
+	private static final Comparator<Upload> uploadOrder = new Comparator<Upload>() {
+		@Override
+		public int compare(Upload a, Upload b) {
+			if(a.texture != b.texture) {
+				return Integer.compare(a.texture, b.texture);
+			}
+			if(a.tileY != b.tileY) {
+				return Integer.compare(a.tileY, b.tileY);
+			}
+			return Integer.compare(a.tileX, b.tileX);
+		}
+	};
+
+	private static class Upload {
+
+		public final int[] pixels;
+
+		public int texture;
+		public int tileX;
+		public int tileY;
+
+		/**
+		 * Changed rectangle inside the tile, bounds are inclusive
+		 */
+		public int x0, y0, x1, y1;
+
+		public Upload(int tileWidth) {
+			this.pixels = new int[tileWidth * tileWidth];
+		}
+
+		public boolean isFull(int tileWidth) {
+			return x0 == 0 && y0 == 0 && x1 == tileWidth - 1 && y1 == tileWidth - 1;
+		}
+
+	}
+
+}
@@ -0,0 +1,16 @@
+package b100.minimap.render;
+
+import java.nio.IntBuffer;
+
+/**
+ * Writes pixels into a texture. {@link TileUploadQueue} only talks to this interface,
+ * so batching uploads does not depend on an OpenGL context.
+ */
+public interface TileUploader {
+	
+	/**
+	 * Upload width * height tightly packed ARGB pixels into a rectangle of a texture, see {@link b100.minimap.utils.TilePixels}
+	 */
+	public void upload(int texture, int x, int y, int width, int height, IntBuffer pixels);
+	
+}
@@ -2,10 +2,11 @@ package b100.minimap.render;
 
 public interface WorldListener {
 	
-	public void onUpdateBlock(int x, int y, int z);
-	
-	public void onUpdateBlocks(int minX, int minY, int minZ, int maxX, int maxY, int maxZ);
-	
 	public void onUpdateAllChunks();
 	
+	/**
+	 * Called once per frame for every chunk with changed columns, see {@link ColumnMask}
+	 */
+	public void onUpdateChunkColumns(int chunkX, int chunkZ, long[] columns);
+	
 }
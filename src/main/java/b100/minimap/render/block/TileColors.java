@@ -4,13 +4,15 @@ import java.awt.image.BufferedImage;
 
 import b100.minimap.Minimap;
 import net.minecraft.core.block.Block;
-import net.minecraft.core.world.World;
 
 public abstract class TileColors {
 	
 	public abstract void createTileColors();
 	
-	public abstract int getTileColor(World world, int x, int y, int z, Block block);
+	/**
+	 * Base color of a block, must be safe to call from tile render threads
+	 */
+	public abstract int getTileColor(Block block, int metadata);
 	
 	public void createTileColors(BufferedImage image, int tiles, int[] tileColors) {
 		if(image == null) {
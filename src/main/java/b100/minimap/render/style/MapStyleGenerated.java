@@ -5,6 +5,8 @@ import static java.lang.Math.*;
 
 import java.awt.image.BufferedImage;
 
+import b100.minimap.utils.ColorUtils;
+
 public class MapStyleGenerated implements MapStyle {
 
 	public int resolution = 1024;
@@ -39,8 +41,7 @@ public class MapStyleGenerated implements MapStyle {
 					float distance = maxDistance - distance(x, y, centerX, centerY);
 					float alpha = borderWidth - abs(distance - circleSize);
 					
-					int a = clamp((int)(alpha * 255.0f), 0, 255);
-					image.setRGB(x, y, (a << 24) | rgb);
+					image.setRGB(x, y, ColorUtils.withAlpha(rgb, (int)(alpha * 255.0f)));
 				}
 			}
 		}else {
@@ -55,8 +56,7 @@ public class MapStyleGenerated implements MapStyle {
 						alpha = 1.0f;
 					}
 					
-					int a = clamp((int)(alpha * 255.0f), 0, 255);
-					image.setRGB(x, y, (a << 24) | rgb);
+					image.setRGB(x, y, ColorUtils.withAlpha(rgb, (int)(alpha * 255.0f)));
 				}
 			}
 		}
@@ -86,8 +86,7 @@ public class MapStyleGenerated implements MapStyle {
 					float distance = maxDistance - distance(x, y, centerX, centerY);
 					float alpha = bw - (distance - circleSize);
 					
-					int a = clamp((int)(alpha * 255.0f), 0, 255);
-					image.setRGB(x, y, (a << 24) | rgb);
+					image.setRGB(x, y, ColorUtils.withAlpha(rgb, (int)(alpha * 255.0f)));
 				}
 			}
 		}
@@ -0,0 +1,109 @@
+package b100.minimap.utils;
+
+/**
+ * Integer ARGB color math used on the tile rendering path.
+ * <p>
+ * Two channels are processed at once by spreading them into separate lanes of
+ * an int or a long (SWAR), so no method allocates or touches floating point
+ * except for converting a float factor to fixed point.
+ * <p>
+ * Compared to the float versions in {@link Utils}, results match exactly for
+ * {@link #multiply(int, int)} and differ by at most 1 per channel for
+ * {@link #scale(int, int)} and {@link #mix(int, int, int)}, where the float
+ * versions round down values that should be whole numbers.
+ */
+public abstract class ColorUtils {
+
+	/**
+	 * 1.0 in the 16.16 fixed point format used by {@link #scale(int, int)}
+	 */
+	public static final int ONE = 1 << 16;
+
+	private static final long LANE_MASK = 0x0000FFFF0000FFFFL;
+	private static final long CHANNEL_MASK = 0x000000FF000000FFL;
+
+	public static int toFixed(float f) {
+		if(f <= 0.0f) return 0;
+		return (int) (f * ONE + 0.5f);
+	}
+
+	/**
+	 * Per channel <code>color0 * color1 / 255</code>, including alpha
+	 */
+	public static int multiply(int color0, int color1) {
+		long ag = (long) ((color0 >>> 24) * (color1 >>> 24)) << 32 | ((color0 >> 8) & 0xFF) * ((color1 >> 8) & 0xFF);
+		long rb = (long) (((color0 >> 16) & 0xFF) * ((color1 >> 16) & 0xFF)) << 32 | (color0 & 0xFF) * (color1 & 0xFF);
+
+		ag = div255(ag);
+		rb = div255(rb);
+
+		return pack(ag, rb);
+	}
+
+	/**
+	 * Multiply all channels of a color, including alpha, by a 16.16 fixed point factor and clamp to 255
+	 */
+	public static int scale(int color, int factor) {
+		long ag = (long) (color >>> 24) << 32 | ((color >> 8) & 0xFF);
+		long rb = (long) ((color >> 16) & 0xFF) << 32 | (color & 0xFF);
+
+		ag = saturate(((ag * factor) >>> 16) & LANE_MASK);
+		rb = saturate(((rb * factor) >>> 16) & LANE_MASK);
+
+		return pack(ag, rb);
+	}
+
+	public static int scale(int color, float factor) {
+		return scale(color, toFixed(factor));
+	}
+
+	/**
+	 * Linear interpolation between two colors, weight is in the range 0 - 256
+	 */
+	public static int mix(int color0, int color1, int weight) {
+		int w0 = 256 - weight;
+
+		int rb = ((color0 & 0x00FF00FF) * w0 + (color1 & 0x00FF00FF) * weight) >>> 8;
+		int ag = ((color0 >>> 8) & 0x00FF00FF) * w0 + ((color1 >>> 8) & 0x00FF00FF) * weight;
+
+		return (ag & 0xFF00FF00) | (rb & 0x00FF00FF);
+	}
+
+	public static int mix(int color0, int color1, float f) {
+		return mix(color0, color1, (int) (f * 256.0f + 0.5f));
+	}
+
+	/**
+	 * Average of two colors, same as <code>mix(color0, color1, 128)</code>
+	 */
+	public static int mixHalf(int color0, int color1) {
+		return ((color0 >>> 1) & 0x7F7F7F7F) + ((color1 >>> 1) & 0x7F7F7F7F) + (color0 & color1 & 0x01010101);
+	}
+
+	/**
+	 * Set the alpha of a color, alpha is clamped to 0 - 255
+	 */
+	public static int withAlpha(int color, int alpha) {
+		return Utils.clamp(alpha, 0, 255) << 24 | (color & 0xFFFFFF);
+	}
+
+	/**
+	 * Exact floor(x / 255) for each 32 bit lane, valid for lane values up to 255 * 255
+	 */
+	private static long div255(long lanes) {
+		return ((lanes + ((lanes >>> 8) & LANE_MASK) + 0x0000000100000001L) >>> 8) & CHANNEL_MASK;
+	}
+
+	/**
+	 * Clamp each 32 bit lane to 255, lanes must be smaller than 65536
+	 */
+	private static long saturate(long lanes) {
+		long overflow = (((lanes >>> 8) & CHANNEL_MASK) + CHANNEL_MASK) >>> 8 & 0x0000000100000001L;
+		return (lanes | overflow * 0xFF) & CHANNEL_MASK;
+	}
+
+	private static int pack(long ag, long rb) {
+		return (int) (ag >>> 32) << 24 | (int) (rb >>> 32) << 16 | (int) ag << 8 | (int) rb;
+	}
+
+}
@@ -0,0 +1,134 @@
+package b100.minimap.utils;
+
+/**
+ * Base of the hash maps with primitive long keys, using open addressing with linear probing.
+ * Removing an entry shifts the following entries back instead of leaving a tombstone.
+ * <p>
+ * Subclasses store the values in arrays parallel to the keys and define which slots are used.
+ */
+public abstract class LongHashTable {
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	protected long[] keys;
+	protected int mask;
+	protected int size;
+	private int resizeThreshold;
+
+	protected LongHashTable(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max((int) (expectedSize / LOAD_FACTOR), 16) - 1) << 1;
+		allocate(capacity);
+	}
+
+	public abstract boolean isUsed(int slot);
+
+	/**
+	 * Create empty value arrays for a new capacity
+	 */
+	protected abstract void allocateValues(int capacity);
+
+	/**
+	 * Call {@link #allocate(int)} with a new capacity and put all old entries again
+	 */
+	protected abstract void resize(int capacity);
+
+	/**
+	 * Move the value of a slot to an empty slot, and mark the old slot as empty
+	 */
+	protected abstract void moveValue(int from, int to);
+
+	/**
+	 * Mark a slot as empty
+	 */
+	protected abstract void clearValue(int slot);
+
+	/**
+	 * @return the slot of the key, or -(slot + 1) of the empty slot where it would be inserted
+	 */
+	protected final int findSlot(long key) {
+		int i = getSlot(key);
+		while(true) {
+			if(!isUsed(i)) {
+				return -(i + 1);
+			}
+			if(keys[i] == key) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+	}
+
+	/**
+	 * Must be called after a new entry has been put into an empty slot, the slot is invalid afterwards
+	 */
+	protected final void onInsert() {
+		if(++size > resizeThreshold) {
+			resize(keys.length << 1);
+		}
+	}
+
+	protected final void removeAt(int i) {
+		clearValue(i);
+		size--;
+
+		// Move entries that were pushed past the removed one back, so lookups don't stop early
+		int j = i;
+		while(true) {
+			j = (j + 1) & mask;
+			if(!isUsed(j)) {
+				return;
+			}
+			int home = getSlot(keys[j]);
+			boolean movable = i <= j ? (home <= i || home > j) : (home <= i && home > j);
+			if(movable) {
+				keys[i] = keys[j];
+				moveValue(j, i);
+				i = j;
+			}
+		}
+	}
+
+	public boolean containsKey(long key) {
+		return findSlot(key) >= 0;
+	}
+
+	public void clear() {
+		for(int i=0; i < keys.length; i++) {
+			clearValue(i);
+		}
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int getSlotCount() {
+		return keys.length;
+	}
+
+	public long getKeyAt(int slot) {
+		return keys[slot];
+	}
+
+	private int getSlot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * Replace all arrays with empty ones of a capacity, which must be a power of two
+	 */
+	protected final void allocate(int capacity) {
+		keys = new long[capacity];
+		allocateValues(capacity);
+		mask = capacity - 1;
+		size = 0;
+		resizeThreshold = (int) (capacity * LOAD_FACTOR);
+	}
+
+}
@@ -0,0 +1,95 @@
+package b100.minimap.utils;
+
+/**
+ * Hash map from primitive long keys to primitive long values, see {@link LongHashTable}. Nothing is boxed.
+ * <p>
+ * Entries can be iterated by slot: <code>for(int i=0; i &lt; map.getSlotCount(); i++)</code>,
+ * skipping slots where {@link #isUsed(int)} returns false.
+ */
+public class LongLongMap extends LongHashTable {
+
+	private long[] values;
+	private boolean[] used;
+
+	public LongLongMap() {
+		this(64);
+	}
+
+	public LongLongMap(int expectedSize) {
+		super(expectedSize);
+	}
+
+	/**
+	 * @return the value of the key, or defaultValue if the map does not contain the key
+	 */
+	public long get(long key, long defaultValue) {
+		int slot = findSlot(key);
+		return slot >= 0 ? values[slot] : defaultValue;
+	}
+
+	public void put(long key, long value) {
+		int slot = findSlot(key);
+		if(slot >= 0) {
+			values[slot] = value;
+			return;
+		}
+		slot = -(slot + 1);
+		keys[slot] = key;
+		values[slot] = value;
+		used[slot] = true;
+		onInsert();
+	}
+
+	/**
+	 * @return true if the map contained the key
+	 */
+	public boolean remove(long key) {
+		int slot = findSlot(key);
+		if(slot < 0) {
+			return false;
+		}
+		removeAt(slot);
+		return true;
+	}
+
+	@Override
+	public boolean isUsed(int slot) {
+		return used[slot];
+	}
+
+	public long getValueAt(int slot) {
+		return values[slot];
+	}
+
+	@Override
+	protected void allocateValues(int capacity) {
+		values = new long[capacity];
+		used = new boolean[capacity];
+	}
+
+	@Override
+	protected void moveValue(int from, int to) {
+		values[to] = values[from];
+		used[to] = true;
+		used[from] = false;
+	}
+
+	@Override
+	protected void clearValue(int slot) {
+		used[slot] = false;
+	}
+
+	@Override
+	protected void resize(int capacity) {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(capacity);
+		for(int i=0; i < oldUsed.length; i++) {
+			if(oldUsed[i]) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package b100.minimap.utils;
+
+/**
+ * Hash map from primitive long keys to objects, see {@link LongHashTable}.
+ * Keys are never boxed. Null values are not allowed.
+ * <p>
+ * Entries can be iterated by slot: <code>for(int i=0; i &lt; map.getSlotCount(); i++)</code>,
+ * skipping slots where {@link #getValueAt(int)} returns null.
+ */
+public class LongObjectMap<V> extends LongHashTable {
+
+	private Object[] values;
+
+	public LongObjectMap() {
+		this(64);
+	}
+
+	public LongObjectMap(int expectedSize) {
+		super(expectedSize);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int slot = findSlot(key);
+		return slot >= 0 ? (V) values[slot] : null;
+	}
+
+	/**
+	 * @return the previous value, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if(value == null) {
+			throw new NullPointerException();
+		}
+		int slot = findSlot(key);
+		if(slot >= 0) {
+			Object old = values[slot];
+			values[slot] = value;
+			return (V) old;
+		}
+		slot = -(slot + 1);
+		keys[slot] = key;
+		values[slot] = value;
+		onInsert();
+		return null;
+	}
+
+	/**
+	 * @return the removed value, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int slot = findSlot(key);
+		if(slot < 0) {
+			return null;
+		}
+		Object value = values[slot];
+		removeAt(slot);
+		return (V) value;
+	}
+
+	@Override
+	public boolean isUsed(int slot) {
+		return values[slot] != null;
+	}
+
+	/**
+	 * @return the value in a slot, or null if the slot is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public V getValueAt(int slot) {
+		return (V) values[slot];
+	}
+
+	@Override
+	protected void allocateValues(int capacity) {
+		values = new Object[capacity];
+	}
+
+	@Override
+	protected void moveValue(int from, int to) {
+		values[to] = values[from];
+		values[from] = null;
+	}
+
+	@Override
+	protected void clearValue(int slot) {
+		values[slot] = null;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected void resize(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		for(int i=0; i < oldValues.length; i++) {
+			if(oldValues[i] != null) {
+				put(oldKeys[i], (V) oldValues[i]);
+			}
+		}
+	}
+
+}
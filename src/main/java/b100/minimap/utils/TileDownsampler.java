@@ -0,0 +1,50 @@
+package b100.minimap.utils;
+
+/**
+ * Reduces the resolution of square ARGB images by averaging blocks of pixels, used for
+ * level of detail tiles. Colors are weighted by alpha, so transparent pixels don't darken
+ * the colors next to them.
+ */
+public abstract class TileDownsampler {
+
+	/**
+	 * Downsample a square image so every block of factor * factor pixels becomes one pixel
+	 *
+	 * @param src source image of srcWidth * srcWidth pixels
+	 * @param dst destination image of at least (srcWidth / factor) * (srcWidth / factor) pixels
+	 * @param factor must divide srcWidth
+	 */
+	public static void downsample(int[] src, int srcWidth, int[] dst, int factor) {
+		if(factor == 1) {
+			System.arraycopy(src, 0, dst, 0, srcWidth * srcWidth);
+			return;
+		}
+		int dstWidth = srcWidth / factor;
+		int count = factor * factor;
+
+		for(int y=0; y < dstWidth; y++) {
+			for(int x=0; x < dstWidth; x++) {
+				int a = 0, r = 0, g = 0, b = 0;
+
+				for(int j=0; j < factor; j++) {
+					int offset = (y * factor + j) * srcWidth + x * factor;
+					for(int i=0; i < factor; i++) {
+						int argb = src[offset + i];
+						int alpha = TilePixels.getAlpha(argb);
+						a += alpha;
+						r += TilePixels.getRed(argb) * alpha;
+						g += TilePixels.getGreen(argb) * alpha;
+						b += TilePixels.getBlue(argb) * alpha;
+					}
+				}
+
+				if(a == 0) {
+					dst[y * dstWidth + x] = 0;
+				}else {
+					dst[y * dstWidth + x] = TilePixels.pack((a + count / 2) / count, (r + a / 2) / a, (g + a / 2) / a, (b + a / 2) / a);
+				}
+			}
+		}
+	}
+
+}
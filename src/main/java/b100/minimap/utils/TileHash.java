@@ -0,0 +1,90 @@
+package b100.minimap.utils;
+
+/**
+ * 64 bit non-cryptographic hash of tile pixels, used to find tiles that have not changed.
+ * <p>
+ * This is xxHash64 computed directly over an int array, the result is the same as xxHash64 of the
+ * ints written in little endian byte order. Nothing is allocated.
+ */
+public abstract class TileHash {
+
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+	private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+	public static long hash(int[] data) {
+		return hash(data, 0, data.length, 0L);
+	}
+
+	public static long hash(int[] data, int offset, int length, long seed) {
+		int end = offset + length;
+		int i = offset;
+		long hash;
+
+		if(length >= 8) {
+			long v1 = seed + PRIME1 + PRIME2;
+			long v2 = seed + PRIME2;
+			long v3 = seed;
+			long v4 = seed - PRIME1;
+
+			// 32 bytes per stripe
+			int limit = end - 8;
+			do {
+				v1 = round(v1, getLong(data, i));
+				v2 = round(v2, getLong(data, i + 2));
+				v3 = round(v3, getLong(data, i + 4));
+				v4 = round(v4, getLong(data, i + 6));
+				i += 8;
+			}while(i <= limit);
+
+			hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			hash = mergeRound(hash, v1);
+			hash = mergeRound(hash, v2);
+			hash = mergeRound(hash, v3);
+			hash = mergeRound(hash, v4);
+		}else {
+			hash = seed + PRIME5;
+		}
+
+		hash += (long) length * 4;
+
+		while(i + 2 <= end) {
+			hash ^= round(0, getLong(data, i));
+			hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+			i += 2;
+		}
+
+		if(i < end) {
+			hash ^= (data[i] & 0xFFFFFFFFL) * PRIME1;
+			hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= PRIME2;
+		hash ^= hash >>> 29;
+		hash *= PRIME3;
+		hash ^= hash >>> 32;
+		return hash;
+	}
+
+	/**
+	 * Two ints as one little endian 64 bit lane
+	 */
+	private static long getLong(int[] data, int i) {
+		return (data[i] & 0xFFFFFFFFL) | ((long) data[i + 1] << 32);
+	}
+
+	private static long round(long acc, long input) {
+		acc += input * PRIME2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * PRIME1;
+	}
+
+	private static long mergeRound(long acc, long value) {
+		acc ^= round(0, value);
+		return acc * PRIME1 + PRIME4;
+	}
+
+}
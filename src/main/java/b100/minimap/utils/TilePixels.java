@@ -0,0 +1,67 @@
+package b100.minimap.utils;
+
+import java.nio.IntBuffer;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+
+/**
+ * Tile pixels are ARGB ints everywhere: in the renderer, on disk and in the map viewer.
+ * OpenGL reads the same ints with {@link #FORMAT} and {@link #TYPE}, so pixels never
+ * have to be converted to another byte order before they are uploaded.
+ */
+public abstract class TilePixels {
+
+	/**
+	 * Pixel format to upload ARGB ints with, the channels are read from the int and not from memory so this does not depend on the byte order
+	 */
+	public static final int FORMAT = GL12.GL_BGRA;
+	public static final int TYPE = GL12.GL_UNSIGNED_INT_8_8_8_8_REV;
+
+	/**
+	 * Internal format of textures holding tiles
+	 */
+	public static final int INTERNAL_FORMAT = GL11.GL_RGBA;
+
+	/**
+	 * Copy a rectangle of an image into a buffer, tightly packed, starting at the position of the buffer
+	 *
+	 * @param stride width of the source image
+	 */
+	public static void copyRect(int[] src, int stride, int x, int y, int width, int height, IntBuffer dst) {
+		for(int i=0; i < height; i++) {
+			dst.put(src, (y + i) * stride + x, width);
+		}
+	}
+
+	/**
+	 * Copy a rectangle from one image to another image of the same size
+	 */
+	public static void copyRect(int[] src, int[] dst, int stride, int x, int y, int width, int height) {
+		for(int i=0; i < height; i++) {
+			int offset = (y + i) * stride + x;
+			System.arraycopy(src, offset, dst, offset, width);
+		}
+	}
+
+	public static int getAlpha(int argb) {
+		return argb >>> 24;
+	}
+
+	public static int getRed(int argb) {
+		return (argb >> 16) & 0xFF;
+	}
+
+	public static int getGreen(int argb) {
+		return (argb >> 8) & 0xFF;
+	}
+
+	public static int getBlue(int argb) {
+		return argb & 0xFF;
+	}
+
+	public static int pack(int a, int r, int g, int b) {
+		return (a & 0xFF) << 24 | (r & 0xFF) << 16 | (g & 0xFF) << 8 | (b & 0xFF);
+	}
+
+}
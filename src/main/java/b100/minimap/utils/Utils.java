@@ -77,6 +77,12 @@ public abstract class Utils {
 		return a;
 	}
 	
+	public static double clamp(double a, double min, double max) {
+		if(a > max) return max;
+		if(a < min) return min;
+		return a;
+	}
+	
 	public static float mix(float a, float b, float c) {
 		return a * (1.0f - c) + b * c;
 	}
@@ -0,0 +1,103 @@
+package b100.minimap.waypoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import b100.minimap.data.WorldData;
+import b100.minimap.mc.IDimension;
+import b100.minimap.utils.LongObjectMap;
+
+/**
+ * Visible waypoints of one dimension sorted into square cells of blocks, so waypoints near a position
+ * can be found without looking at all of them. The grid is rebuilt when the waypoints change, see
+ * {@link WorldData#onWaypointsChanged()}.
+ */
+public class WaypointGrid {
+
+	public static final int CELL_SHIFT = 7;
+	public static final int CELL_SIZE = 1 << CELL_SHIFT;
+
+	private final LongObjectMap<List<Waypoint>> cells = new LongObjectMap<>(64);
+	private final List<List<Waypoint>> unusedLists = new ArrayList<>();
+
+	private WorldData worldData;
+	private IDimension dimension;
+	private int version;
+
+	/**
+	 * Number of waypoints in the grid
+	 */
+	public int size;
+
+	/**
+	 * Rebuild the grid if the waypoints or the dimension have changed
+	 *
+	 * @return true if the grid has been rebuilt
+	 */
+	public boolean update(WorldData worldData, IDimension dimension) {
+		if(worldData == this.worldData && dimension == this.dimension && worldData.getWaypointVersion() == version) {
+			return false;
+		}
+		this.worldData = worldData;
+		this.dimension = dimension;
+		this.version = worldData.getWaypointVersion();
+
+		clear();
+
+		List<Waypoint> waypoints = worldData.getWaypoints();
+		for(int i=0; i < waypoints.size(); i++) {
+			Waypoint waypoint = waypoints.get(i);
+			if(!waypoint.visible || waypoint.dimension != dimension) {
+				continue;
+			}
+			long key = getKey(waypoint.x >> CELL_SHIFT, waypoint.z >> CELL_SHIFT);
+			List<Waypoint> cell = cells.get(key);
+			if(cell == null) {
+				cell = unusedLists.size() > 0 ? unusedLists.remove(unusedLists.size() - 1) : new ArrayList<>();
+				cells.put(key, cell);
+			}
+			cell.add(waypoint);
+			size++;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the waypoints in a cell, or null if there are none
+	 */
+	public List<Waypoint> getCell(int cellX, int cellZ) {
+		return cells.get(getKey(cellX, cellZ));
+	}
+
+	/**
+	 * All cells, iterate with {@link LongObjectMap#getSlotCount()}
+	 */
+	public LongObjectMap<List<Waypoint>> getCells() {
+		return cells;
+	}
+
+	public static int getCellX(long key) {
+		return (int) (key >> 32);
+	}
+
+	public static int getCellZ(long key) {
+		return (int) key;
+	}
+
+	private static long getKey(int cellX, int cellZ) {
+		return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+	}
+
+	private void clear() {
+		for(int i=0; i < cells.getSlotCount(); i++) {
+			List<Waypoint> cell = cells.getValueAt(i);
+			if(cell != null) {
+				cell.clear();
+				unusedLists.add(cell);
+			}
+		}
+		cells.clear();
+		size = 0;
+	}
+
+}
@@ -0,0 +1,80 @@
+package b100.minimap.data;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RegionFileTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("region", ".mmr");
+		file.delete();
+		file.deleteOnExit();
+	}
+
+	private static byte[] data(int length, int seed) {
+		byte[] data = new byte[length];
+		for(int i=0; i < length; i++) {
+			data[i] = (byte) (i * 31 + seed);
+		}
+		return data;
+	}
+
+	@Test
+	public void readsDataWrittenBeforeAndAfterOpening() throws IOException {
+		byte[] before = data(1000, 1);
+		RegionFile regionFile = new RegionFile(file);
+		regionFile.write(3, before, before.length, 42L);
+		regionFile.close();
+
+		regionFile = new RegionFile(file);
+		assertArrayEquals(before, regionFile.read(3));
+		assertEquals(42L, regionFile.getTag(3));
+
+		// Appended after the file was mapped
+		byte[] after = data(5000, 2);
+		regionFile.write(7, after, after.length, 43L);
+		assertArrayEquals(after, regionFile.read(7));
+		assertArrayEquals(before, regionFile.read(3));
+		regionFile.close();
+	}
+
+	@Test
+	public void readsMovedDataPastTheMapping() throws IOException {
+		RegionFile regionFile = new RegionFile(file);
+		regionFile.write(0, data(100, 3), 100, 0L);
+		regionFile.close();
+
+		regionFile = new RegionFile(file);
+		// Grows past its sector, so it is moved to the end of the file
+		byte[] grown = data(RegionFile.SECTOR_SIZE * 3, 4);
+		regionFile.write(0, grown, grown.length, 0L);
+		assertArrayEquals(grown, regionFile.read(0));
+		regionFile.close();
+	}
+
+	@Test
+	public void closedFileThrowsAndCanBeDeleted() throws IOException {
+		RegionFile regionFile = new RegionFile(file);
+		regionFile.write(1, data(10, 5), 10, 0L);
+		regionFile.close();
+
+		try {
+			regionFile.read(1);
+			fail();
+		}catch (ClosedChannelException e) {}
+
+		Files.delete(file.toPath());
+		assertFalse(file.exists());
+	}
+
+}
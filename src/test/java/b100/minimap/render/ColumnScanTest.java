@@ -0,0 +1,359 @@
+package b100.minimap.render;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import b100.minimap.render.block.RenderType;
+import b100.minimap.utils.ColorUtils;
+import net.minecraft.core.world.chunk.ChunkSection;
+
+/**
+ * Scans synthetic chunks through {@link ChunkView} and compares the summaries against a plain
+ * descent from the top of the world, the way tiles were scanned through the World before.
+ */
+public class ColumnScanTest {
+
+	private static final int WORLD_HEIGHT = 256;
+	private static final int SECTIONS = WORLD_HEIGHT >> 4;
+	private static final int SEA_LEVEL = 64;
+
+	private static final int STONE = 1;
+	private static final int GRASS = 2;
+	private static final int DIRT = 3;
+	private static final int WATER = 9;
+	private static final int LEAVES = 18;
+	private static final int GLASS = 20;
+	private static final int TALLGRASS = 31;
+
+	private static final RenderType[] RENDER_TYPES = new RenderType[256];
+
+	static {
+		for(int i=0; i < RENDER_TYPES.length; i++) {
+			RENDER_TYPES[i] = RenderType.OPAQUE;
+		}
+		RENDER_TYPES[0] = RenderType.INVISIBLE;
+		RENDER_TYPES[TALLGRASS] = RenderType.INVISIBLE;
+		RENDER_TYPES[WATER] = RenderType.TRANSPARENT;
+		RENDER_TYPES[GLASS] = RenderType.TRANSPARENT;
+	}
+
+	/**
+	 * Blocks, metadata and light of a chunk, indexed [x][y][z]
+	 */
+	private static class SyntheticChunk {
+
+		final int[][][] blocks = new int[16][WORLD_HEIGHT][16];
+		final int[][][] metadata = new int[16][WORLD_HEIGHT][16];
+		final int[][][] skyLight = new int[16][WORLD_HEIGHT][16];
+		final int[][][] blockLight = new int[16][WORLD_HEIGHT][16];
+
+		SyntheticChunk(long seed) {
+			Random random = new Random(seed);
+			for(int x=0; x < 16; x++) {
+				for(int z=0; z < 16; z++) {
+					int height = 40 + random.nextInt(50);
+					for(int y=0; y <= height; y++) {
+						blocks[x][y][z] = y == height ? GRASS : y > height - 4 ? DIRT : STONE;
+						metadata[x][y][z] = random.nextInt(16);
+					}
+					// Caves under the surface, the scan must stop at the surface
+					if(height > 50 && random.nextInt(4) == 0) {
+						blocks[x][height - 8][z] = 0;
+					}
+					for(int y = height + 1; y <= SEA_LEVEL; y++) {
+						blocks[x][y][z] = WATER;
+					}
+					int top = Math.max(height, SEA_LEVEL);
+					switch(random.nextInt(6)) {
+						case 0: blocks[x][top + 1][z] = TALLGRASS; break;
+						case 1: blocks[x][top + 6][z] = LEAVES; break;
+						case 2: blocks[x][top + 3][z] = GLASS; blocks[x][top + 4][z] = GLASS; break;
+						default: break;
+					}
+					for(int y=0; y < WORLD_HEIGHT; y++) {
+						skyLight[x][y][z] = y > top ? 15 : random.nextInt(16);
+						blockLight[x][y][z] = random.nextInt(16);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Sections in the layout of {@link ChunkSection}, sections without blocks are left out like in a real chunk
+		 */
+		void setSections(ChunkView view) {
+			view.worldHeight = WORLD_HEIGHT;
+			view.clear();
+			for(int section=0; section < SECTIONS; section++) {
+				boolean empty = true;
+				short[] sectionBlocks = new short[16 * 16 * 16];
+				byte[] sectionMetadata = new byte[16 * 16 * 8];
+				byte[] sectionSkyLight = new byte[16 * 16 * 8];
+				byte[] sectionBlockLight = new byte[16 * 16 * 8];
+				for(int x=0; x < 16; x++) {
+					for(int y=0; y < 16; y++) {
+						for(int z=0; z < 16; z++) {
+							int index = ChunkSection.makeBlockIndex(x, y, z);
+							int worldY = (section << 4) + y;
+							sectionBlocks[index] = (short) blocks[x][worldY][z];
+							setNibble(sectionMetadata, index, metadata[x][worldY][z]);
+							setNibble(sectionSkyLight, index, skyLight[x][worldY][z]);
+							setNibble(sectionBlockLight, index, blockLight[x][worldY][z]);
+							empty &= blocks[x][worldY][z] == 0;
+						}
+					}
+				}
+				if(!empty) {
+					view.setSection(section, sectionBlocks, sectionMetadata, sectionSkyLight, sectionBlockLight);
+					continue;
+				}
+				// Without a section there is no light data, it is lit by the sky only
+				for(int x=0; x < 16; x++) {
+					for(int y = section << 4; y < (section + 1) << 4; y++) {
+						for(int z=0; z < 16; z++) {
+							skyLight[x][y][z] = 15;
+							blockLight[x][y][z] = 0;
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * The scan as it was done through the world, from the top of the world down
+		 */
+		void scanBaseline(TileSnapshot snapshot, ColumnSummary summary) {
+			for(int z=0; z < 16; z++) {
+				for(int x=0; x < 16; x++) {
+					int column = z * 16 + x;
+					summary.clearColumn(column);
+					int transparentDepth = 0;
+					for(int y = WORLD_HEIGHT - 1; y >= 0; y--) {
+						int id = blocks[x][y][z];
+						RenderType renderType = RENDER_TYPES[id];
+						if(renderType == RenderType.INVISIBLE) {
+							continue;
+						}
+						if(summary.topY[column] == -1) {
+							summary.topY[column] = (short) y;
+						}
+						if(renderType == RenderType.OPAQUE) {
+							summary.opaqueY[column] = (short) y;
+							summary.opaqueBlock[column] = (short) id;
+							summary.opaqueMetadata[column] = (byte) metadata[x][y][z];
+							summary.opaqueTint[column] = tint(id, column);
+							summary.opaqueLight[column] = light(snapshot, x, y + 1, z);
+							break;
+						}
+						if(transparentDepth == 0) {
+							summary.transparentBlock[column] = (short) id;
+							summary.transparentMetadata[column] = (byte) metadata[x][y][z];
+							summary.transparentTint[column] = tint(id, column);
+							summary.transparentLight[column] = light(snapshot, x, y + 1, z);
+						}
+						transparentDepth++;
+					}
+					summary.transparentDepth[column] = (byte) transparentDepth;
+				}
+			}
+		}
+
+		short light(TileSnapshot snapshot, int x, int y, int z) {
+			int sky = y < WORLD_HEIGHT ? skyLight[x][y][z] : 15;
+			int block = y < WORLD_HEIGHT ? blockLight[x][y][z] : 0;
+			int light = Math.max(sky - snapshot.skyDarken, block);
+			return ColumnSummary.encodeLight(snapshot.brightness[Math.max(light, 0)]);
+		}
+
+	}
+
+	private static void setNibble(byte[] nibbles, int index, int value) {
+		int shift = (index & 1) << 2;
+		nibbles[index >> 1] = (byte) ((nibbles[index >> 1] & ~(0xF << shift)) | value << shift);
+	}
+
+	private static int tint(int id, int column) {
+		return id * 0x010101 + column;
+	}
+
+	/**
+	 * Snapshot of a chunk with every column dirty and a tint for every block the scan can find
+	 */
+	private static TileSnapshot createSnapshot(SyntheticChunk chunk) {
+		TileSnapshot snapshot = new TileSnapshot();
+		snapshot.skyDarken = 4;
+		for(int i=0; i < snapshot.brightness.length; i++) {
+			snapshot.brightness[i] = ColorUtils.ONE * i / 15;
+		}
+		ColumnMask.setAll(snapshot.summary.dirtyColumns);
+
+		chunk.setSections(snapshot.chunk);
+
+		int[] ids = { STONE, GRASS, DIRT, WATER, LEAVES, GLASS };
+		for(int column=0; column < ColumnSummary.COLUMNS; column++) {
+			int base = column * TileSnapshot.TINT_CANDIDATES;
+			int k = 0;
+			for(int id : ids) {
+				if(k < TileSnapshot.TINT_CANDIDATES && columnContains(chunk, column, id)) {
+					snapshot.tintBlocks[base + k] = (short) id;
+					snapshot.tints[base + k] = tint(id, column);
+					k++;
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * True if the scan can find the block in the column, it finds at most one opaque and one transparent block
+	 */
+	private static boolean columnContains(SyntheticChunk chunk, int column, int id) {
+		int x = column & 15;
+		int z = column >> 4;
+		boolean transparent = false;
+		for(int y = WORLD_HEIGHT - 1; y >= 0; y--) {
+			int block = chunk.blocks[x][y][z];
+			RenderType renderType = RENDER_TYPES[block];
+			if(renderType == RenderType.TRANSPARENT && !transparent) {
+				transparent = true;
+				if(block == id) {
+					return true;
+				}
+			}
+			if(renderType == RenderType.OPAQUE) {
+				return block == id;
+			}
+		}
+		return false;
+	}
+
+	private static void assertSummaryEquals(String message, ColumnSummary expected, ColumnSummary actual) {
+		for(int column=0; column < ColumnSummary.COLUMNS; column++) {
+			String columnMessage = message + ", column " + column;
+			assertEquals(columnMessage, expected.topY[column], actual.topY[column]);
+			assertEquals(columnMessage, expected.opaqueY[column], actual.opaqueY[column]);
+			assertEquals(columnMessage, expected.transparentDepth[column], actual.transparentDepth[column]);
+			if(expected.opaqueY[column] != -1) {
+				assertEquals(columnMessage, expected.opaqueBlock[column], actual.opaqueBlock[column]);
+				assertEquals(columnMessage, expected.opaqueMetadata[column], actual.opaqueMetadata[column]);
+				assertEquals(columnMessage, expected.opaqueTint[column], actual.opaqueTint[column]);
+				assertEquals(columnMessage, expected.opaqueLight[column], actual.opaqueLight[column]);
+			}
+			if(expected.transparentDepth[column] != 0) {
+				assertEquals(columnMessage, expected.transparentBlock[column], actual.transparentBlock[column]);
+				assertEquals(columnMessage, expected.transparentMetadata[column], actual.transparentMetadata[column]);
+				assertEquals(columnMessage, expected.transparentTint[column], actual.transparentTint[column]);
+				assertEquals(columnMessage, expected.transparentLight[column], actual.transparentLight[column]);
+			}
+		}
+	}
+
+	@Test
+	public void scanMatchesBaseline() {
+		for(long seed=0; seed < 16; seed++) {
+			SyntheticChunk chunk = new SyntheticChunk(seed);
+			TileSnapshot snapshot = createSnapshot(chunk);
+
+			ColumnSummary expected = new ColumnSummary();
+			chunk.scanBaseline(snapshot, expected);
+
+			MapTileRenderer.scanColumns(snapshot, RENDER_TYPES);
+
+			assertSummaryEquals("seed " + seed, expected, snapshot.summary);
+			assertTrue(snapshot.summary.hasVisibleBlocks);
+			assertTrue(ColumnMask.isEmpty(snapshot.missingTints));
+		}
+	}
+
+	@Test
+	public void onlyDirtyColumnsAreScanned() {
+		SyntheticChunk chunk = new SyntheticChunk(1);
+		TileSnapshot snapshot = createSnapshot(chunk);
+		MapTileRenderer.scanColumns(snapshot, RENDER_TYPES);
+
+		// A block placed on top of two columns, only one of them is marked
+		chunk.blocks[3][200][4] = STONE;
+		chunk.blocks[5][200][6] = STONE;
+		TileSnapshot changed = createSnapshot(chunk);
+		snapshot.summary.copyTo(changed.summary);
+		ColumnMask.clear(changed.summary.dirtyColumns);
+		ColumnMask.set(changed.summary.dirtyColumns, 3, 4);
+		MapTileRenderer.scanColumns(changed, RENDER_TYPES);
+
+		assertEquals(200, changed.summary.topY[4 * 16 + 3]);
+		assertEquals(STONE, changed.summary.opaqueBlock[4 * 16 + 3]);
+		assertEquals(snapshot.summary.topY[6 * 16 + 5], changed.summary.topY[6 * 16 + 5]);
+	}
+
+	@Test
+	public void missingTintMarksColumn() {
+		SyntheticChunk chunk = new SyntheticChunk(2);
+		TileSnapshot snapshot = createSnapshot(chunk);
+		int column = 7 * 16 + 9;
+		for(int k=0; k < TileSnapshot.TINT_CANDIDATES; k++) {
+			snapshot.tintBlocks[column * TileSnapshot.TINT_CANDIDATES + k] = 0;
+		}
+
+		MapTileRenderer.scanColumns(snapshot, RENDER_TYPES);
+
+		assertEquals(0xFFFFFF, snapshot.summary.opaqueTint[column]);
+		assertTrue(ColumnMask.isSet(snapshot.missingTints, 9, 7));
+		assertFalse(ColumnMask.isSet(snapshot.missingTints, 8, 7));
+	}
+
+	@Test
+	public void emptyChunkHasNoVisibleBlocks() {
+		TileSnapshot snapshot = new TileSnapshot();
+		snapshot.chunk.worldHeight = WORLD_HEIGHT;
+		snapshot.chunk.clear();
+		ColumnMask.setAll(snapshot.summary.dirtyColumns);
+
+		MapTileRenderer.scanColumns(snapshot, RENDER_TYPES);
+
+		assertFalse(snapshot.summary.hasVisibleBlocks);
+		assertEquals(-1, snapshot.summary.topY[0]);
+		assertEquals(-1, snapshot.summary.opaqueY[255]);
+	}
+
+	/**
+	 * Times the scan against the baseline on a set of synthetic chunks. Only the results are checked, the
+	 * times are printed for comparison.
+	 */
+	@Test
+	public void timeScanAgainstBaseline() {
+		final int chunkCount = 32;
+		final int rounds = 20;
+
+		SyntheticChunk[] chunks = new SyntheticChunk[chunkCount];
+		TileSnapshot[] snapshots = new TileSnapshot[chunkCount];
+		for(int i=0; i < chunkCount; i++) {
+			chunks[i] = new SyntheticChunk(100 + i);
+			snapshots[i] = createSnapshot(chunks[i]);
+		}
+		ColumnSummary expected = new ColumnSummary();
+
+		long baselineTime = 0;
+		long scanTime = 0;
+		for(int round=0; round < rounds; round++) {
+			for(int i=0; i < chunkCount; i++) {
+				long start = System.nanoTime();
+				chunks[i].scanBaseline(snapshots[i], expected);
+				baselineTime += System.nanoTime() - start;
+
+				ColumnMask.setAll(snapshots[i].summary.dirtyColumns);
+				start = System.nanoTime();
+				MapTileRenderer.scanColumns(snapshots[i], RENDER_TYPES);
+				scanTime += System.nanoTime() - start;
+
+				assertSummaryEquals("chunk " + i, expected, snapshots[i].summary);
+			}
+		}
+
+		int scans = chunkCount * rounds;
+		System.out.println("Column scan: baseline " + baselineTime / scans + " ns/chunk, chunk view " + scanTime / scans + " ns/chunk");
+	}
+
+}
@@ -0,0 +1,41 @@
+package b100.minimap.render;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records every upload with a copy of its pixels instead of writing to a texture
+ */
+public class RecordingTileUploader implements TileUploader {
+
+	public final List<Upload> uploads = new ArrayList<>();
+
+	@Override
+	public void upload(int texture, int x, int y, int width, int height, IntBuffer pixels) {
+		int[] copy = new int[pixels.remaining()];
+		pixels.duplicate().get(copy);
+		uploads.add(new Upload(texture, x, y, width, height, copy));
+	}
+
+	public static class Upload {
+
+		public final int texture;
+		public final int x;
+		public final int y;
+		public final int width;
+		public final int height;
+		public final int[] pixels;
+
+		public Upload(int texture, int x, int y, int width, int height, int[] pixels) {
+			this.texture = texture;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+			this.pixels = pixels;
+		}
+
+	}
+
+}
@@ -0,0 +1,66 @@
+package b100.minimap.render;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TileQuadCacheTest {
+
+	private static final int ZOOM = 2;
+	private static final int TILE_SIZE = 16 * ZOOM;
+	private static final int EXTENT = 100;
+	private static final int LOD_RADIUS = 16;
+
+	private TileQuadCache cache;
+
+	@Before
+	public void setUp() {
+		cache = new TileQuadCache();
+		// Visible from -90 up to 110, chunks -3 to 3 cover -96 up to 128
+		assertTrue(cache.update(1L, ZOOM, LOD_RADIUS, 10, 10, EXTENT, TILE_SIZE));
+	}
+
+	@Test
+	public void panWithinTileDoesNotRebuild() {
+		// Both edges stay inside the chunks -3 and 3
+		assertFalse(cache.update(1L, ZOOM, LOD_RADIUS, 11, 10, EXTENT, TILE_SIZE));
+		assertFalse(cache.update(1L, ZOOM, LOD_RADIUS, 17, 4, EXTENT, TILE_SIZE));
+		assertFalse(cache.update(1L, ZOOM, LOD_RADIUS, 4, 28, EXTENT, TILE_SIZE));
+		assertEquals(1, cache.rebuilds);
+	}
+
+	@Test
+	public void crossingTileBoundaryRebuilds() {
+		// The right edge moves from 128 to 129, so the pixel at 128 in chunk 4 becomes visible
+		assertFalse(cache.update(1L, ZOOM, LOD_RADIUS, 28, 10, EXTENT, TILE_SIZE));
+		assertTrue(cache.update(1L, ZOOM, LOD_RADIUS, 29, 10, EXTENT, TILE_SIZE));
+
+		// The top edge moves from -96 to -97, into chunk -4
+		assertFalse(cache.update(1L, ZOOM, LOD_RADIUS, 29, 4, EXTENT, TILE_SIZE));
+		assertTrue(cache.update(1L, ZOOM, LOD_RADIUS, 29, 3, EXTENT, TILE_SIZE));
+		assertEquals(3, cache.rebuilds);
+	}
+
+	@Test
+	public void zoomChangeRebuilds() {
+		assertTrue(cache.update(1L, ZOOM + 1, LOD_RADIUS, 10, 10, EXTENT, TILE_SIZE));
+		assertTrue(cache.update(1L, ZOOM + 1, LOD_RADIUS, 15, 15, EXTENT, 16 * (ZOOM + 1)));
+		assertFalse(cache.update(1L, ZOOM + 1, LOD_RADIUS, 15, 15, EXTENT, 16 * (ZOOM + 1)));
+	}
+
+	@Test
+	public void lodRadiusChangeRebuilds() {
+		assertTrue(cache.update(1L, ZOOM, LOD_RADIUS + 1, 10, 10, EXTENT, TILE_SIZE));
+		assertFalse(cache.update(1L, ZOOM, LOD_RADIUS + 1, 12, 10, EXTENT, TILE_SIZE));
+		assertTrue(cache.update(1L, ZOOM, 0, 12, 10, EXTENT, TILE_SIZE));
+	}
+
+	@Test
+	public void regionSetChangeRebuilds() {
+		assertTrue(cache.update(2L, ZOOM, LOD_RADIUS, 10, 10, EXTENT, TILE_SIZE));
+		assertFalse(cache.update(2L, ZOOM, LOD_RADIUS, 12, 10, EXTENT, TILE_SIZE));
+		assertTrue(cache.update(3L, ZOOM, LOD_RADIUS, 12, 10, EXTENT, TILE_SIZE));
+	}
+
+}
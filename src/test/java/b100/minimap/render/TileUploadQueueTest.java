@@ -0,0 +1,149 @@
+package b100.minimap.render;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TileUploadQueueTest {
+
+	private static final int TILE_WIDTH = 4;
+
+	private RecordingTileUploader uploader;
+	private TileUploadQueue queue;
+
+	@Before
+	public void setUp() {
+		uploader = new RecordingTileUploader();
+		queue = new TileUploadQueue(uploader, TILE_WIDTH);
+	}
+
+	@Test
+	public void wholeTilesInOneRowAreUploadedTogether() {
+		queue.add(1, 2, 5, tile(20), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		queue.add(1, 0, 5, tile(0), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		queue.add(1, 1, 5, tile(10), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		queue.flush();
+
+		assertEquals(1, uploader.uploads.size());
+		RecordingTileUploader.Upload upload = uploader.uploads.get(0);
+		assertEquals(1, upload.texture);
+		assertEquals(0, upload.x);
+		assertEquals(5 * TILE_WIDTH, upload.y);
+		assertEquals(3 * TILE_WIDTH, upload.width);
+		assertEquals(TILE_WIDTH, upload.height);
+		assertEquals(3, queue.lastTiles);
+		assertEquals(1, queue.lastUploads);
+
+		// Rows of the image are the rows of all three tiles next to each other
+		for(int y=0; y < TILE_WIDTH; y++) {
+			for(int x=0; x < 3 * TILE_WIDTH; x++) {
+				int expected = tile((x / TILE_WIDTH) * 10)[y * TILE_WIDTH + x % TILE_WIDTH];
+				assertEquals(expected, upload.pixels[y * 3 * TILE_WIDTH + x]);
+			}
+		}
+	}
+
+	@Test
+	public void runsStopAtGapsRowsAndTextures() {
+		queue.add(1, 0, 0, tile(0), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		queue.add(1, 2, 0, tile(0), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		queue.add(1, 3, 1, tile(0), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		queue.add(2, 4, 1, tile(0), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		queue.flush();
+
+		assertEquals(4, uploader.uploads.size());
+		for(RecordingTileUploader.Upload upload : uploader.uploads) {
+			assertEquals(TILE_WIDTH, upload.width);
+			assertEquals(TILE_WIDTH, upload.height);
+		}
+	}
+
+	@Test
+	public void runsAreLimitedToMaxTilesPerUpload() {
+		int tiles = TileUploadQueue.MAX_TILES_PER_UPLOAD + 3;
+		for(int i=0; i < tiles; i++) {
+			queue.add(1, i, 0, tile(i), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		}
+		queue.flush();
+
+		assertEquals(2, uploader.uploads.size());
+		assertEquals(TileUploadQueue.MAX_TILES_PER_UPLOAD * TILE_WIDTH, uploader.uploads.get(0).width);
+		assertEquals(3 * TILE_WIDTH, uploader.uploads.get(1).width);
+		assertEquals(TileUploadQueue.MAX_TILES_PER_UPLOAD * TILE_WIDTH, uploader.uploads.get(1).x);
+	}
+
+	@Test
+	public void changedRectanglesOfOneTileAreMerged() {
+		int[] pixels = tile(100);
+		queue.add(3, 1, 2, pixels, 1, 0, 1, 1);
+		queue.add(3, 1, 2, pixels, 2, 2, 1, 1);
+		queue.flush();
+
+		assertEquals(1, uploader.uploads.size());
+		RecordingTileUploader.Upload upload = uploader.uploads.get(0);
+		assertEquals(TILE_WIDTH + 1, upload.x);
+		assertEquals(2 * TILE_WIDTH, upload.y);
+		assertEquals(2, upload.width);
+		assertEquals(3, upload.height);
+		for(int y=0; y < 3; y++) {
+			for(int x=0; x < 2; x++) {
+				assertEquals(pixels[y * TILE_WIDTH + x + 1], upload.pixels[y * 2 + x]);
+			}
+		}
+	}
+
+	@Test
+	public void partialTilesAreNotPartOfRuns() {
+		queue.add(1, 0, 0, tile(0), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		queue.add(1, 1, 0, tile(0), 0, 0, TILE_WIDTH - 1, TILE_WIDTH);
+		queue.add(1, 2, 0, tile(0), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		queue.flush();
+
+		assertEquals(3, uploader.uploads.size());
+		assertEquals(TILE_WIDTH - 1, uploader.uploads.get(1).width);
+	}
+
+	@Test
+	public void aTileAddedTwiceIsUploadedOnceWithTheLatestPixels() {
+		queue.add(1, 0, 0, tile(0), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		queue.add(1, 0, 0, tile(50), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		assertEquals(1, queue.size());
+		queue.flush();
+
+		assertEquals(1, uploader.uploads.size());
+		assertArrayEquals(tile(50), uploader.uploads.get(0).pixels);
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void cancelledTexturesAreNotUploaded() {
+		queue.add(1, 0, 0, tile(0), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		queue.add(2, 0, 0, tile(0), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		queue.add(2, 1, 0, tile(0), 0, 0, TILE_WIDTH, TILE_WIDTH);
+		queue.cancel(2);
+		queue.flush();
+
+		assertEquals(1, uploader.uploads.size());
+		assertEquals(1, uploader.uploads.get(0).texture);
+	}
+
+	@Test
+	public void flushWithoutChangesUploadsNothing() {
+		queue.flush();
+		assertEquals(0, uploader.uploads.size());
+		assertEquals(0, queue.lastUploads);
+	}
+
+	/**
+	 * A tile whose pixels count up from a start value
+	 */
+	private static int[] tile(int start) {
+		int[] pixels = new int[TILE_WIDTH * TILE_WIDTH];
+		for(int i=0; i < pixels.length; i++) {
+			pixels[i] = 0xFF000000 | (start + i);
+		}
+		return pixels;
+	}
+
+}
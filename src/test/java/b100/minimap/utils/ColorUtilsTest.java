@@ -0,0 +1,105 @@
+package b100.minimap.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Checks the integer color math against the float versions in {@link Utils}
+ */
+public class ColorUtilsTest {
+
+	/**
+	 * Colors that put different values into every channel, so a mixup of lanes shows up
+	 */
+	private static final int[] COLORS = {
+		0x00000000, 0xFFFFFFFF, 0xFF000000, 0x00FFFFFF,
+		0x80808080, 0x7F7F7F7F, 0x01010101, 0xFEFEFEFE,
+		0xFF102030, 0x40C0E0FF, 0x12345678, 0x9ABCDEF0,
+		0xFF7F8081, 0x01FF00FE, 0xC0FFEE00, 0x55AA55AA,
+	};
+
+	private static final float[] FACTORS = {
+		0.0f, 0.1f, 0.25f, 0.5f, 0.65f, 0.75f, 0.9f, 1.0f, 1.25f, 1.5f, 2.0f, 4.0f,
+	};
+
+	@Test
+	public void multiplyMatchesEveryChannelPair() {
+		for(int a=0; a < 256; a++) {
+			for(int b=0; b < 256; b++) {
+				int color0 = TilePixels.pack(a, b, a, b);
+				int color1 = TilePixels.pack(b, a, 255 - b, 255 - a);
+				assertEquals("multiply " + a + " " + b, Utils.multiplyColor(color0, color1), ColorUtils.multiply(color0, color1));
+			}
+		}
+	}
+
+	@Test
+	public void multiplyMatchesColors() {
+		for(int color0 : COLORS) {
+			for(int color1 : COLORS) {
+				assertEquals(Utils.multiplyColor(color0, color1), ColorUtils.multiply(color0, color1));
+			}
+		}
+	}
+
+	@Test
+	public void scaleIsWithinOneOfFloat() {
+		for(float factor : FACTORS) {
+			for(int v=0; v < 256; v++) {
+				int color = TilePixels.pack(v, 255 - v, v ^ 0x55, v);
+				assertChannelsWithinOne("scale " + v + " by " + factor, Utils.multiplyColor(color, factor), ColorUtils.scale(color, factor));
+			}
+		}
+	}
+
+	@Test
+	public void scaleClampsToWhite() {
+		assertEquals(0xFFFFFFFF, ColorUtils.scale(0x80808080, 4.0f));
+		assertEquals(0xFFFF0000, ColorUtils.scale(0xFFFF0000, 1.25f));
+		assertEquals(0x00000000, ColorUtils.scale(0xFFFFFFFF, 0.0f));
+	}
+
+	@Test
+	public void mixIsWithinOneOfFloat() {
+		for(int color0 : COLORS) {
+			for(int color1 : COLORS) {
+				for(int i=0; i <= 16; i++) {
+					float f = i / 16.0f;
+					assertChannelsWithinOne("mix " + f, Utils.mixColor(color0, color1, f), ColorUtils.mix(color0, color1, f));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void mixEndsReturnTheColors() {
+		for(int color0 : COLORS) {
+			for(int color1 : COLORS) {
+				assertEquals(color0, ColorUtils.mix(color0, color1, 0));
+				assertEquals(color1, ColorUtils.mix(color0, color1, 256));
+			}
+		}
+	}
+
+	@Test
+	public void mixHalfMatchesEveryChannelPair() {
+		for(int a=0; a < 256; a++) {
+			for(int b=0; b < 256; b++) {
+				int color0 = TilePixels.pack(a, b, a, b);
+				int color1 = TilePixels.pack(b, a, 255 - b, 255 - a);
+				assertEquals("mixHalf " + a + " " + b, Utils.mixColor(color0, color1, 0.5f), ColorUtils.mixHalf(color0, color1));
+				assertEquals(ColorUtils.mix(color0, color1, 128), ColorUtils.mixHalf(color0, color1));
+			}
+		}
+	}
+
+	private static void assertChannelsWithinOne(String message, int expected, int actual) {
+		for(int shift = 0; shift < 32; shift += 8) {
+			int e = (expected >>> shift) & 0xFF;
+			int a = (actual >>> shift) & 0xFF;
+			assertTrue(message + ": expected " + Integer.toHexString(expected) + " but was " + Integer.toHexString(actual), Math.abs(e - a) <= 1);
+		}
+	}
+
+}
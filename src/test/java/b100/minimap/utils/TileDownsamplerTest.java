@@ -0,0 +1,141 @@
+package b100.minimap.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TileDownsamplerTest {
+
+	@Test
+	public void factorOneCopiesTheImage() {
+		int[] src = new int[16 * 16];
+		for(int i=0; i < src.length; i++) {
+			src[i] = 0xFF000000 | i * 997;
+		}
+		int[] dst = new int[16 * 16];
+		TileDownsampler.downsample(src, 16, dst, 1);
+		assertArrayEquals(src, dst);
+	}
+
+	@Test
+	public void factorTwoAveragesEachBlock() {
+		int[] src = {
+			0xFF000000, 0xFF020406,   0xFFFFFFFF, 0xFFFFFFFF,
+			0xFF040810, 0xFF060A0C,   0xFFFFFFFF, 0xFFFFFFFF,
+
+			0xFF100000, 0xFF100000,   0xFF000010, 0xFF000020,
+			0xFF100000, 0xFF100000,   0xFF000030, 0xFF000040,
+		};
+		int[] dst = new int[4];
+		TileDownsampler.downsample(src, 4, dst, 2);
+
+		// Halves are rounded up
+		assertEquals(0xFF030609, dst[0]);
+		assertEquals(0xFFFFFFFF, dst[1]);
+		assertEquals(0xFF100000, dst[2]);
+		assertEquals(0xFF000028, dst[3]);
+	}
+
+	@Test
+	public void factorFourAveragesEachBlock() {
+		int[] src = new int[16 * 16];
+		for(int y=0; y < 16; y++) {
+			for(int x=0; x < 16; x++) {
+				// Every 4x4 block has red 0..15, green from its position and a constant blue
+				int block = (y / 4) * 4 + x / 4;
+				int red = (y % 4) * 4 + x % 4;
+				src[y * 16 + x] = TilePixels.pack(255, red, block * 10, 200);
+			}
+		}
+		int[] dst = new int[4 * 4];
+		TileDownsampler.downsample(src, 16, dst, 4);
+
+		for(int block=0; block < 16; block++) {
+			// Average of 0..15 is 7.5, rounded up
+			assertEquals(TilePixels.pack(255, 8, block * 10, 200), dst[block]);
+		}
+	}
+
+	@Test
+	public void transparentPixelsDoNotDarkenColors() {
+		int[] src = {
+			0xFFFF8000, 0x00000000,
+			0x00000000, 0x00000000,
+		};
+		int[] dst = new int[1];
+		TileDownsampler.downsample(src, 2, dst, 2);
+
+		// Color of the only visible pixel, alpha averaged over all four and rounded
+		assertEquals(TilePixels.pack(64, 255, 128, 0), dst[0]);
+	}
+
+	@Test
+	public void colorsAreWeightedByAlpha() {
+		int red = TilePixels.pack(255, 200, 0, 0);
+		int blue = TilePixels.pack(85, 0, 0, 200);
+		int[] src = {
+			red, blue,
+			red, blue,
+		};
+		int[] dst = new int[1];
+		TileDownsampler.downsample(src, 2, dst, 2);
+
+		// 255 * 200 / 340 = 150, 85 * 200 / 340 = 50
+		assertEquals(TilePixels.pack(170, 150, 0, 50), dst[0]);
+	}
+
+	@Test
+	public void fullyTransparentBlocksStayTransparent() {
+		int[] src = {
+			0x00FFFFFF, 0x00123456,
+			0x00000000, 0x00FF0000,
+		};
+		int[] dst = {0xDEADBEEF};
+		TileDownsampler.downsample(src, 2, dst, 2);
+		assertEquals(0, dst[0]);
+	}
+
+	@Test
+	public void oddWidthsUseTheLastRowAndColumn() {
+		// 9 * 9 pixels in 3 * 3 blocks, only the pixels on the right and bottom edge are white
+		int[] src = new int[9 * 9];
+		for(int y=0; y < 9; y++) {
+			for(int x=0; x < 9; x++) {
+				src[y * 9 + x] = (x == 8 || y == 8) ? 0xFFFFFFFF : 0xFF000000;
+			}
+		}
+		int[] dst = new int[3 * 3];
+		TileDownsampler.downsample(src, 9, dst, 3);
+
+		int third = (255 * 3 + 4) / 9;
+		int fiveNinths = (255 * 5 + 4) / 9;
+		assertEquals(0xFF000000, dst[0]);
+		assertEquals(0xFF000000, dst[4]);
+		assertEquals(gray(third), dst[2]);
+		assertEquals(gray(third), dst[6]);
+		assertEquals(gray(third), dst[5]);
+		assertEquals(gray(third), dst[7]);
+		assertEquals(gray(fiveNinths), dst[8]);
+	}
+
+	@Test
+	public void onlyTheDownsampledPixelsAreWritten() {
+		int[] src = new int[6 * 6];
+		java.util.Arrays.fill(src, 0xFF102030);
+		int[] dst = new int[16];
+		java.util.Arrays.fill(dst, 7);
+		TileDownsampler.downsample(src, 6, dst, 2);
+
+		for(int i=0; i < 9; i++) {
+			assertEquals(0xFF102030, dst[i]);
+		}
+		for(int i=9; i < dst.length; i++) {
+			assertEquals(7, dst[i]);
+		}
+	}
+
+	private static int gray(int value) {
+		return TilePixels.pack(255, value, value, value);
+	}
+
+}
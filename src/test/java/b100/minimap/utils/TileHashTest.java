@@ -0,0 +1,84 @@
+package b100.minimap.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Expected values are xxHash64 of the ints written as little endian bytes. The string vectors are
+ * the published xxHash64 test vectors with seed 0.
+ */
+public class TileHashTest {
+
+	/**
+	 * Ints of a string whose length is a multiple of 4, read as little endian
+	 */
+	private static int[] littleEndianInts(String string) {
+		int[] ints = new int[string.length() / 4];
+		for(int i=0; i < ints.length; i++) {
+			int offset = i * 4;
+			ints[i] = string.charAt(offset) | string.charAt(offset + 1) << 8 | string.charAt(offset + 2) << 16 | string.charAt(offset + 3) << 24;
+		}
+		return ints;
+	}
+
+	@Test
+	public void emptyInput() {
+		assertEquals(0xEF46DB3751D8E999L, TileHash.hash(new int[0]));
+	}
+
+	@Test
+	public void singleInt() {
+		assertEquals(0xDE0327B0D25D92CCL, TileHash.hash(littleEndianInts("abcd")));
+		assertEquals(0xF42F94001FCB5351L, TileHash.hash(new int[] { 1 }));
+	}
+
+	@Test
+	public void shorterThanOneStripe() {
+		assertEquals(0x3AD351775B4634B7L, TileHash.hash(littleEndianInts("abcdefgh")));
+		assertEquals(0xB5148CB100A911FCL, TileHash.hash(new int[] { 1, 2, 3 }));
+	}
+
+	@Test
+	public void severalStripes() {
+		String digits = "12345678901234567890123456789012345678901234567890123456789012345678901234567890";
+		assertEquals(0xE04A477F19EE145DL, TileHash.hash(littleEndianInts(digits)));
+
+		int[] data = new int[16];
+		for(int i=0; i < data.length; i++) {
+			data[i] = i;
+		}
+		assertEquals(0x8A44256AED976C78L, TileHash.hash(data));
+	}
+
+	@Test
+	public void seedAndOddTail() {
+		int[] data = new int[17];
+		for(int i=0; i < data.length; i++) {
+			data[i] = i;
+		}
+		assertEquals(0x0815A4BC7BE52375L, TileHash.hash(data, 0, data.length, 1L));
+	}
+
+	@Test
+	public void negativeIntsAndSeed() {
+		int[] data = { -1, 0xFF000000, 0x12345678, 0x87654321, 7 };
+		assertEquals(0x53978D6A769BE4FDL, TileHash.hash(data, 0, data.length, 0x9E3779B97F4A7C15L));
+	}
+
+	@Test
+	public void wholeTile() {
+		int[] tile = new int[16 * 16];
+		for(int i=0; i < tile.length; i++) {
+			tile[i] = 0xFF000000 | i * 997;
+		}
+		assertEquals(0x3388D16058F1E476L, TileHash.hash(tile));
+	}
+
+	@Test
+	public void offsetHashesOnlyTheRange() {
+		int[] data = { 99, 99, 1, 2, 3, 99 };
+		assertEquals(TileHash.hash(new int[] { 1, 2, 3 }), TileHash.hash(data, 2, 3, 0L));
+	}
+
+}
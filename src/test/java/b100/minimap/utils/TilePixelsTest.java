@@ -0,0 +1,125 @@
+package b100.minimap.utils;
+
+import static org.junit.Assert.*;
+
+import java.nio.IntBuffer;
+
+import org.junit.Test;
+
+public class TilePixelsTest {
+
+	/**
+	 * Image where every pixel holds its own position, so a wrong offset or stride shows up as a wrong value
+	 */
+	private static int[] image(int width, int height) {
+		int[] pixels = new int[width * height];
+		for(int y=0; y < height; y++) {
+			for(int x=0; x < width; x++) {
+				pixels[y * width + x] = 0xFF000000 | y << 8 | x;
+			}
+		}
+		return pixels;
+	}
+
+	@Test
+	public void copyRectToBufferPacksRows() {
+		int[] src = image(8, 6);
+		IntBuffer dst = IntBuffer.allocate(3 * 2);
+		TilePixels.copyRect(src, 8, 2, 3, 3, 2, dst);
+
+		assertEquals(6, dst.position());
+		assertArrayEquals(new int[] {
+			0xFF000302, 0xFF000303, 0xFF000304,
+			0xFF000402, 0xFF000403, 0xFF000404,
+		}, dst.array());
+	}
+
+	@Test
+	public void copyRectToBufferUsesStrideNotWidth() {
+		// The rectangle is as wide as the image is high, mixing them up reads the wrong rows
+		int[] src = image(5, 3);
+		IntBuffer dst = IntBuffer.allocate(3 * 3);
+		TilePixels.copyRect(src, 5, 1, 0, 3, 3, dst);
+
+		assertArrayEquals(new int[] {
+			0xFF000001, 0xFF000002, 0xFF000003,
+			0xFF000101, 0xFF000102, 0xFF000103,
+			0xFF000201, 0xFF000202, 0xFF000203,
+		}, dst.array());
+	}
+
+	@Test
+	public void copyRectToBufferStartsAtBufferPosition() {
+		int[] src = image(4, 4);
+		IntBuffer dst = IntBuffer.allocate(4);
+		dst.put(0x12345678);
+		TilePixels.copyRect(src, 4, 3, 2, 1, 2, dst);
+
+		assertEquals(3, dst.position());
+		assertArrayEquals(new int[] { 0x12345678, 0xFF000203, 0xFF000303, 0 }, dst.array());
+	}
+
+	@Test
+	public void copyRectToBufferWholeImage() {
+		int[] src = image(16, 16);
+		IntBuffer dst = IntBuffer.allocate(16 * 16);
+		TilePixels.copyRect(src, 16, 0, 0, 16, 16, dst);
+
+		assertArrayEquals(src, dst.array());
+	}
+
+	@Test
+	public void copyRectBetweenImagesKeepsPosition() {
+		int[] src = image(8, 8);
+		int[] dst = new int[8 * 8];
+		TilePixels.copyRect(src, dst, 8, 5, 6, 3, 2);
+
+		for(int y=0; y < 8; y++) {
+			for(int x=0; x < 8; x++) {
+				boolean inside = x >= 5 && y >= 6;
+				assertEquals(x + ", " + y, inside ? src[y * 8 + x] : 0, dst[y * 8 + x]);
+			}
+		}
+	}
+
+	@Test
+	public void copyRectBetweenImagesLeavesOtherPixels() {
+		int[] src = image(4, 4);
+		int[] dst = new int[4 * 4];
+		for(int i=0; i < dst.length; i++) {
+			dst[i] = -1;
+		}
+		TilePixels.copyRect(src, dst, 4, 1, 1, 2, 2);
+
+		assertArrayEquals(new int[] {
+			-1, -1,         -1,         -1,
+			-1, 0xFF000101, 0xFF000102, -1,
+			-1, 0xFF000201, 0xFF000202, -1,
+			-1, -1,         -1,         -1,
+		}, dst);
+	}
+
+	@Test
+	public void copyRectEmptyDoesNothing() {
+		int[] src = image(4, 4);
+		int[] dst = new int[4 * 4];
+		TilePixels.copyRect(src, dst, 4, 2, 2, 0, 2);
+		assertArrayEquals(new int[4 * 4], dst);
+
+		IntBuffer buffer = IntBuffer.allocate(4);
+		TilePixels.copyRect(src, 4, 2, 2, 2, 0, buffer);
+		assertEquals(0, buffer.position());
+	}
+
+	@Test
+	public void packAndUnpack() {
+		int argb = TilePixels.pack(0x12, 0x34, 0x56, 0x78);
+		assertEquals(0x12345678, argb);
+		assertEquals(0x12, TilePixels.getAlpha(argb));
+		assertEquals(0x34, TilePixels.getRed(argb));
+		assertEquals(0x56, TilePixels.getGreen(argb));
+		assertEquals(0x78, TilePixels.getBlue(argb));
+		assertEquals(0xFF, TilePixels.getAlpha(TilePixels.pack(0x1FF, 0, 0, 0)));
+	}
+
+}